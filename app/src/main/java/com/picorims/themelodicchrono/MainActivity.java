@@ -24,8 +24,6 @@ SOFTWARE.
 
 package com.picorims.themelodicchrono;
 
-import static com.picorims.themelodicchrono.models.Units.UNITS;
-
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.text.HtmlCompat;
@@ -34,28 +32,38 @@ import android.app.Activity;
 import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
-import android.util.Log;
-import android.util.Pair;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.picorims.themelodicchrono.debug.Metrics;
+import com.picorims.themelodicchrono.debug.Tracing;
+import com.picorims.themelodicchrono.models.ActiveRules;
+import com.picorims.themelodicchrono.models.Chrono;
+import com.picorims.themelodicchrono.models.ChronoDisplay;
+import com.picorims.themelodicchrono.models.Phrase;
 import com.picorims.themelodicchrono.models.Rules;
+import com.picorims.themelodicchrono.models.RulesAnalysis;
+import com.picorims.themelodicchrono.sound.AudioEngine;
 import com.picorims.themelodicchrono.sound.SoundGenerator;
+import com.picorims.themelodicchrono.sound.WarmUp;
 
 import java.util.ArrayList;
 
 public class MainActivity extends AppCompatActivity {
     public static final String TAG = "MainActivity";
     public static final double NOTE_DURATION = 0.5;
+    // above this, applied rules are still played but a warning is shown
+    public static final RulesAnalysis.Budget RULES_BUDGET = new RulesAnalysis.Budget(32, 50, 0.25);
 
     //components
     private Button startChronoBtn;
     private Button stopChronoBtn;
     private Button resetChronoBtn;
     private TextView chronoDisplayText;
+    private TextView metricsText;
 
     private EditText textRules;
     private Button applyRules;
@@ -68,9 +76,8 @@ public class MainActivity extends AppCompatActivity {
     private Handler handler;
     private Boolean chronoStopped = true;
     private Runnable chronoTask;
-    private long unixStart = -1; //-1 when inactive
-    private long unixThen = -1;
-    private long unixAtStop = -1;
+    private final Chrono chrono = new Chrono();
+    private final ChronoDisplay chronoDisplay = new ChronoDisplay();
 
     // rules
     // I am not motivated to learn Fragments + ViewModel + LiveData + FragmentManager + etc.
@@ -132,7 +139,8 @@ public class MainActivity extends AppCompatActivity {
             "- at 1m:30s play C\n" +
             "   * (plays C once)\n";
     private String rulesCommands = "";
-    private Rules rules = null;
+    private final ActiveRules activeRules = new ActiveRules(); //rules used by the chrono loop
+    private Rules pendingRules = null; //rules being warmed up before replacing the current ones
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -146,6 +154,7 @@ public class MainActivity extends AppCompatActivity {
         stopChronoBtn = findViewById(R.id.stop_chrono);
         resetChronoBtn = findViewById(R.id.reset_chrono);
         chronoDisplayText = findViewById(R.id.chrono_display);
+        metricsText = findViewById(R.id.metrics_text);
 
         TextView cmdSyntax = findViewById(R.id.command_syntax);
         textRules = findViewById(R.id.rules_text);
@@ -168,56 +177,33 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void run() {
                 if (!chronoStopped) {
-                    // initialization
-                    long unixNow = System.currentTimeMillis();
+                    long tickStartNs = System.nanoTime();
+                    Tracing.begin(Tracing.CHRONO_TICK);
 
-                    // we start from 0
-                    if (unixThen == -1) {
-                        unixThen = unixNow; // reference for last loop call
-                    }
-                    if (unixStart == -1) {
-                        unixStart = unixNow; // reference for time elapsed
-                    }
-                    // we were paused and have to restart from where we were
-                    // to do this, we shift the start by the time ellapsed during
-                    // the pause.
-                    if (unixAtStop != -1) {
-                        long ellapsedWhilePaused = unixNow - unixAtStop;
-                        unixStart += ellapsedWhilePaused;
-                        unixAtStop = -1; //clear last stop to not get here again
-                    }
+                    // initialization
+                    chrono.tick(System.currentTimeMillis());
 
                     //durations
-                    long ellapsed = unixNow - unixStart;
-                    long ellapsedThen = unixThen - unixStart;
-                    long loopDuration = unixNow - unixThen;
-
-                    //display
-                    long diffHours = ellapsed / UNITS.get("h");
-                    long diffMinutes = (ellapsed / UNITS.get("m")) % 60;
-                    long diffSeconds = (ellapsed / UNITS.get("s")) % 60;
-                    long diffDeciseconds = (ellapsed / UNITS.get("ds")) % 10;
-
-                    String time = strWithAZero(diffHours)
-                            + ":" + strWithAZero(diffMinutes)
-                            + ":" + strWithAZero(diffSeconds)
-                            + "." + diffDeciseconds;
-                    chronoDisplayText.setText(String.valueOf(time));
+                    long ellapsed = chrono.getEllapsed();
+                    long ellapsedThen = chrono.getEllapsedThen();
+
+                    //display, only when the shown decisecond changes (setText triggers a layout)
+                    if (chronoDisplay.update(ellapsed)) showChronoDisplay();
 
                     //play notes
+                    Rules rules = activeRules.acquire(ellapsedThen);
                     if (rules != null) {
-                        ArrayList<Pair<String, Long>> notesToPlay = rules.getNotesToPlay(ellapsedThen, ellapsed);
-                        for (int i = 0; i < notesToPlay.size(); i++) {
-                            Pair<String, Long> note = notesToPlay.get(i);
-                            String noteStr = note.first;
-                            long delay = note.second;
-                            SoundGenerator.playNote(noteStr, NOTE_DURATION, delay, thisActivity);
+                        ArrayList<Phrase> phrasesToPlay = rules.getPhrasesToPlay(ellapsedThen, ellapsed);
+                        for (int i = 0; i < phrasesToPlay.size(); i++) {
+                            SoundGenerator.playPhrase(phrasesToPlay.get(i), NOTE_DURATION, thisActivity);
                         }
-                        if (notesToPlay.size() > 0) Log.d(TAG, "run: " + notesToPlay);
                     }
 
-                    // end of loop updates
-                    unixThen = unixNow;
+                    Tracing.end();
+                    long tickUs = Metrics.microsSince(tickStartNs);
+                    Metrics.TICKS.increment();
+                    Metrics.TICK_US.add(tickUs);
+                    Metrics.TICK_MAX_US.max(tickUs);
 
                     //loop by sending a delayed call to this runnable
                     MainActivity.this.handler.postDelayed(this, CHRONO_MS_FREQUENCY);
@@ -247,25 +233,47 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onClick(View view) {
                 resetChrono();
-                if (rules != null) rules.reset();
+                activeRules.requestReset();
             }
         });
 
+        // debug metrics, shown and logged on long press on the chrono
+        chronoDisplayText.setOnLongClickListener((View v) -> {
+            if (metricsText.getVisibility() == View.VISIBLE) {
+                metricsText.setVisibility(View.GONE);
+            } else {
+                Metrics.log();
+                metricsText.setText(Metrics.dump());
+                metricsText.setVisibility(View.VISIBLE);
+            }
+            return true;
+        });
+
         applyRules.setOnClickListener((View v) -> {
             String commands = textRules.getText().toString();
             if (isEmpty(textRules)) {
                 //clear
-                rules = null;
+                activeRules.publish(null);
+                pendingRules = null;
                 showToast("Cleared rules.");
             } else {
                 //load
                 long notesDelayMs = Long.parseLong(delayInput.getText().toString());
-                Rules newRules = new Rules(commands, notesDelayMs);
+                Rules newRules = new Rules(commands, notesDelayMs, NOTE_DURATION);
                 if (newRules.isSuccessfullyParsed()) {
-                    //success
-                    rules = newRules;
-                    errorMsg.setText("");
-                    showToast("Loaded rules.");
+                    //success, prepare the sounds before using the rules
+                    pendingRules = newRules;
+                    // the engine is started by the warm up, not on the UI thread
+                    int sampleRate = AudioEngine.getNativeSampleRate(this);
+                    String warning = newRules.getAnalysis().checkBudget(RULES_BUDGET, sampleRate);
+                    errorMsg.setText((warning == null)? "" : warning);
+                    WarmUp.start(newRules, NOTE_DURATION, this, (Rules readyRules, long warmUpMs) -> {
+                        // ignore rules replaced while they were warming up
+                        if (readyRules != pendingRules) return;
+                        activeRules.publish(readyRules);
+                        pendingRules = null;
+                        showToast("Loaded rules (ready in " + warmUpMs + "ms).");
+                    });
                 } else {
                     //error
                     String error = newRules.getErrorMessage();
@@ -276,10 +284,19 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // nothing can play in the background, give the audio output back
+        // (the engine starts again with the next note)
+        if (chronoStopped) SoundGenerator.release();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         stopChrono();
+        SoundGenerator.release();
     }
 
     /**
@@ -299,7 +316,7 @@ public class MainActivity extends AppCompatActivity {
     private void stopChrono() {
         if (!chronoStopped) {
             chronoStopped = true;
-            unixAtStop = System.currentTimeMillis();
+            chrono.stop(System.currentTimeMillis());
         }
     }
 
@@ -307,19 +324,17 @@ public class MainActivity extends AppCompatActivity {
      * Puts back the chrono in an initialized state, erasing tracked time
      */
     private void resetChrono() {
-        unixStart = -1;
-        unixThen = -1;
-        unixAtStop = -1;
-        chronoDisplayText.setText("00:00:00.0");
+        chrono.reset();
+        chronoDisplay.reset();
+        chronoDisplay.update(0);
+        showChronoDisplay();
     }
 
     /**
-     * Returns a String of the value with a leading zero if it is below 10.
-     * @param v The value to stringify
-     * @return The created string
+     * Shows the last time formatted by the chrono display.
      */
-    private String strWithAZero(long v) {
-        return (v < 10)? "0" + v : String.valueOf(v);
+    private void showChronoDisplay() {
+        chronoDisplayText.setText(chronoDisplay.getChars(), 0, chronoDisplay.getLength());
     }
 
     /**
@@ -0,0 +1,140 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.debug;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of counters updated along the tick, rules and audio paths.
+ * Counters are cheap to update from any thread, and can be dumped to logcat
+ * or displayed in the app.
+ */
+public class Metrics {
+    public static final String TAG = "Metrics";
+    private static final ArrayList<Counter> COUNTERS = new ArrayList<>();
+
+    public static final Counter TICKS = register("ticks");
+    public static final Counter TICK_US = register("tick total (us)");
+    public static final Counter TICK_MAX_US = register("tick max (us)");
+    public static final Counter RULES_US = register("rules total (us)");
+    public static final Counter NOTES_SCHEDULED = register("notes scheduled");
+    public static final Counter VOICES_PLAYED = register("voices played (phrases and tones)");
+    public static final Counter SYNTH_CHUNKS = register("chunks synthesized");
+    public static final Counter SYNTH_US = register("synthesis total (us)");
+    public static final Counter WRITE_US = register("write total (us)");
+    public static final Counter UNDERRUNS = register("underruns");
+
+    /**
+     * A named value that can only grow.
+     */
+    public static class Counter {
+        private final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        /**
+         * Keeps the given value if it is higher than the current one.
+         * @param candidate
+         */
+        public void max(long candidate) {
+            long current = value.get();
+            while (candidate > current && !value.compareAndSet(current, candidate)) {
+                current = value.get();
+            }
+        }
+
+        private void reset() {
+            value.set(0);
+        }
+    }
+
+    private static synchronized Counter register(String name) {
+        Counter counter = new Counter(name);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    /**
+     * Microseconds ellapsed since the given System.nanoTime() value.
+     * @param startNs
+     * @return
+     */
+    public static long microsSince(long startNs) {
+        return (System.nanoTime() - startNs) / 1000;
+    }
+
+    /**
+     * Puts all counters back to zero.
+     */
+    public static synchronized void reset() {
+        for (Counter c : COUNTERS) c.reset();
+    }
+
+    /**
+     * All counters, one per line.
+     * @return
+     */
+    public static synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Counter c : COUNTERS) {
+            sb.append(c.getName()).append(": ").append(c.get()).append('\n');
+        }
+        long ticks = TICKS.get();
+        if (ticks > 0) sb.append("tick average (us): ").append(TICK_US.get() / ticks).append('\n');
+        long chunks = SYNTH_CHUNKS.get();
+        if (chunks > 0) sb.append("synthesis average per chunk (us): ").append(SYNTH_US.get() / chunks).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Writes all counters to logcat.
+     */
+    public static void log() {
+        Log.i(TAG, "\n" + dump());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.debug;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Names and helpers for the trace markers emitted by the app, visible in Perfetto / systrace.
+ * Sections must be ended on the thread that began them, while async sections (API 29+)
+ * follow one note across threads thanks to its cookie.
+ */
+public class Tracing {
+    // sections
+    public static final String CHRONO_TICK = "chrono.tick";
+    public static final String RULES_PHRASES_TO_PLAY = "Rules.getPhrasesToPlay";
+    public static final String SYNTHESIS = "AudioEngine.mix";
+    public static final String OUTPUT_WRITE = "AudioSink.write";
+
+    // async sections of the life of a note: scheduled -> synthesized -> written -> played
+    public static final String NOTE_SCHEDULED = "note.scheduled";
+    public static final String NOTE_SYNTHESIZED = "note.synthesized";
+    public static final String NOTE_WRITTEN = "note.written";
+    public static final String NOTE_PLAYED = "note.played";
+
+    private static int nextCookie = 0;
+
+    /**
+     * Begins a section on the current thread.
+     * @param name
+     */
+    public static void begin(String name) {
+        Trace.beginSection(name);
+    }
+
+    /**
+     * Ends the last section begun on the current thread.
+     */
+    public static void end() {
+        Trace.endSection();
+    }
+
+    /**
+     * Gives a new identifier to follow a note in async sections.
+     * @return
+     */
+    public static synchronized int newCookie() {
+        return nextCookie++;
+    }
+
+    /**
+     * Begins an async section. It does nothing before API 29.
+     * @param name
+     * @param cookie
+     */
+    public static void beginAsync(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.beginAsyncSection(name, cookie);
+    }
+
+    /**
+     * Ends an async section. It does nothing before API 29.
+     * @param name
+     * @param cookie
+     */
+    public static void endAsync(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) Trace.endAsyncSection(name, cookie);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.models;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands over rule sets from the thread that builds them (UI, warm up) to the thread
+ * playing them (the chrono loop), without locking.
+ *
+ * A rule set is fully built before being published, and is then only used by the playing
+ * thread, which adopts the latest published rules at the start of a tick and migrates the
+ * cursors of the previous ones at that point. Rules that were published but replaced
+ * before being adopted are never used.
+ */
+public class ActiveRules {
+    /**
+     * A published rule set, null rules meaning that the rules were cleared.
+     */
+    private static class Update {
+        private final Rules rules;
+
+        private Update(Rules rules) {
+            this.rules = rules;
+        }
+    }
+
+    private final AtomicReference<Update> pendingUpdate = new AtomicReference<>(null);
+    private final AtomicBoolean resetRequested = new AtomicBoolean(false);
+    private Rules current = null; //only used by the playing thread
+
+    /**
+     * Publishes rules to use from the next tick. It can be called from any thread,
+     * but the rules must not be modified anymore afterwards.
+     * @param rules the rules, or null to clear them
+     */
+    public void publish(Rules rules) {
+        pendingUpdate.set(new Update(rules));
+    }
+
+    /**
+     * Asks for the rules to be reset (see Rules.reset()) at the next tick.
+     * It can be called from any thread.
+     */
+    public void requestReset() {
+        resetRequested.set(true);
+    }
+
+    /**
+     * Gives the rules to use for the current tick, taking into account what was
+     * published or requested since the last call. It must always be called from
+     * the playing thread.
+     * @param checkedUntil the end of the last time range checked with the rules
+     * @return the rules, or null if there are none
+     */
+    public Rules acquire(long checkedUntil) {
+        Update update = pendingUpdate.getAndSet(null);
+        if (update != null) {
+            if (update.rules != null) update.rules.takeOverFrom(current, checkedUntil);
+            current = update.rules;
+        }
+        if (resetRequested.getAndSet(false) && current != null) current.reset();
+        return current;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.models;
+
+/**
+ * Keeps track of the time ellapsed on the chrono, based on the (unix) times given to it.
+ * It does not read any clock by itself so that any sequence of loop calls can be replayed.
+ */
+public class Chrono {
+    private long unixStart = -1; //-1 when inactive
+    private long unixThen = -1;
+    private long unixAtStop = -1;
+    private long ellapsed = 0;
+    private long ellapsedThen = 0;
+
+    /**
+     * Updates the chrono for a new loop call happening at the given time.
+     * @param unixNow
+     */
+    public void tick(long unixNow) {
+        // we start from 0
+        if (unixThen == -1) {
+            unixThen = unixNow; // reference for last loop call
+        }
+        if (unixStart == -1) {
+            unixStart = unixNow; // reference for time ellapsed
+        }
+        // we were paused and have to restart from where we were
+        // to do this, we shift the start by the time ellapsed during
+        // the pause. The last loop call is shifted as well, otherwise the
+        // pause would be counted in the range of the first loop after it.
+        if (unixAtStop != -1) {
+            long ellapsedWhilePaused = unixNow - unixAtStop;
+            unixStart += ellapsedWhilePaused;
+            unixThen += ellapsedWhilePaused;
+            unixAtStop = -1; //clear last stop to not get here again
+        }
+
+        ellapsed = unixNow - unixStart;
+        ellapsedThen = unixThen - unixStart;
+
+        // end of loop updates
+        unixThen = unixNow;
+    }
+
+    /**
+     * Pauses the chrono at the given time. The next tick resumes it.
+     * @param unixNow
+     */
+    public void stop(long unixNow) {
+        if (unixStart != -1) unixAtStop = unixNow;
+    }
+
+    /**
+     * Puts back the chrono in an initialized state, erasing tracked time
+     */
+    public void reset() {
+        unixStart = -1;
+        unixThen = -1;
+        unixAtStop = -1;
+        ellapsed = 0;
+        ellapsedThen = 0;
+    }
+
+    /**
+     * Time ellapsed since the start, at the last tick.
+     * @return
+     */
+    public long getEllapsed() {
+        return ellapsed;
+    }
+
+    /**
+     * Time ellapsed since the start, at the tick before the last one.
+     * @return
+     */
+    public long getEllapsedThen() {
+        return ellapsedThen;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.models;
+
+import static com.picorims.themelodicchrono.models.Units.UNITS;
+
+/**
+ * Formats the time ellapsed on the chrono as hh:mm:ss.d into a reused char array,
+ * and tells when the text actually changes so that the view is only updated then.
+ * Updating the text does not allocate anything.
+ */
+public class ChronoDisplay {
+    private static final long HOUR = UNITS.get("h");
+    private static final long MINUTE = UNITS.get("m");
+    private static final long SECOND = UNITS.get("s");
+    private static final long DECISECOND = UNITS.get("ds");
+    // up to 19 digits for the hours, then ":mm:ss.d"
+    private static final int MAX_LENGTH = 19 + 8;
+
+    private final char[] chars = new char[MAX_LENGTH];
+    private int length = 0;
+    private long shownDeciseconds = -1; //-1 when nothing was formatted yet
+
+    /**
+     * Formats the given time if it does not give the text that is already shown.
+     * @param ellapsed the time ellapsed on the chrono, in ms
+     * @return true if the text changed and must be shown again
+     */
+    public boolean update(long ellapsed) {
+        long deciseconds = ellapsed / DECISECOND;
+        if (deciseconds == shownDeciseconds) return false;
+        shownDeciseconds = deciseconds;
+
+        // the hours are written from the end, as their number of digits is unknown
+        long hours = ellapsed / HOUR;
+        int hoursLength = Math.max(digitsOf(hours), 2);
+        for (int i = hoursLength - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + hours % 10);
+            hours /= 10;
+        }
+        int pos = hoursLength;
+        chars[pos++] = ':';
+        pos = writeTwoDigits((ellapsed / MINUTE) % 60, pos);
+        chars[pos++] = ':';
+        pos = writeTwoDigits((ellapsed / SECOND) % 60, pos);
+        chars[pos++] = '.';
+        chars[pos++] = (char) ('0' + deciseconds % 10);
+        length = pos;
+        return true;
+    }
+
+    /**
+     * Forgets the shown text, so that the next update formats it again.
+     */
+    public void reset() {
+        shownDeciseconds = -1;
+    }
+
+    /**
+     * The formatted text, made of the first getLength() characters. The array is reused.
+     * @return
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    private int writeTwoDigits(long value, int pos) {
+        chars[pos] = (char) ('0' + value / 10);
+        chars[pos + 1] = (char) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    private static int digitsOf(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
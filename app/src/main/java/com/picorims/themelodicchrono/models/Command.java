@@ -25,9 +25,9 @@ SOFTWARE.
 package com.picorims.themelodicchrono.models;
 
 import android.util.Log;
-import android.util.Pair;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class Command {
     public static final String TAG = "Command";
@@ -40,31 +40,40 @@ public class Command {
         ARPEGGIO,
         REPEAT
     }
+    /**
+     * What to do when an EVERY command should have played several times
+     * within the same time range (short timestamp, late loop call, etc.)
+     */
+    public enum MissedFiresModes {
+        PLAY_ALL, // play the notes of each fire, all at once (they stack up after a long sleep)
+        COLLAPSE  // only play the notes of the last fire, the cursor still moves for each one (default)
+    }
     private Rules rules;
     private CommandTypes commandType;
     private long timestamp;
-    private ArrayList<String> notes;
+    private byte[] pitches; //pitch codes of the notes, shared with commands using the same notes
     private PlayModeTypes playMode;
     private int repeatModeMax;
     private int cursor; //position in the scale, arpeggio, number of repetitions, etc.
+    private Phrase[] phrases; //phrase played at each cursor position, built when first needed
 
     /**
      * Creates a new command based on the given parameters.
      * @param commandType the base command name
      * @param timestamp the reference from zero that tells when to play notes
-     * @param notes the notes to play
+     * @param pitches the pitch codes of the notes to play (see Pitch)
      * @param playMode the mode to use to play notes
      * @param repeatModeMax if in REPEAT mode, the max number of repeats.
      *                      It is set to -1 if not in repeat mode.
      *                      If in REPEAT mode and equals to -1, it defaults to 1.
      */
-    public Command(Rules rules, CommandTypes commandType, long timestamp, ArrayList notes, PlayModeTypes playMode, int repeatModeMax) {
+    public Command(Rules rules, CommandTypes commandType, long timestamp, byte[] pitches, PlayModeTypes playMode, int repeatModeMax) {
         if (commandType == null) throw new IllegalArgumentException("the command type must be specified");
         if (playMode == null) throw new IllegalArgumentException("the play mode type must be specified");
         this.rules = rules;
         this.commandType = commandType;
         this.timestamp = timestamp;
-        this.notes = notes;
+        this.pitches = pitches;
         this.playMode = playMode;
         this.repeatModeMax = (playMode == PlayModeTypes.REPEAT)? repeatModeMax : -1;
         if (this.repeatModeMax == -1 && playMode == PlayModeTypes.REPEAT) this.repeatModeMax = 1;
@@ -77,89 +86,250 @@ public class Command {
      * only once, thus it is irrelevant).
      * @param commandType
      * @param timestamp
-     * @param notes
+     * @param pitches
      */
-    public Command(Rules rules, CommandTypes commandType, long timestamp, ArrayList notes) {
-        this(rules, commandType, timestamp, notes, PlayModeTypes.REPEAT, 1);
+    public Command(Rules rules, CommandTypes commandType, long timestamp, byte[] pitches) {
+        this(rules, commandType, timestamp, pitches, PlayModeTypes.REPEAT, 1);
     }
 
     /**
-     * Gives the notes that should be played within two given timestamps.
+     * Gives the phrases that should be played within two given timestamps.
      * The function assumes we start from zero. In other words, the timestamps
      * should be based on when the chrono started, rather than being a UNIX timestamp.
      * @param timestampMin
      * @param timestampMax
-     * @return
+     * @return the phrases, or null if there is nothing to play
      */
-    public ArrayList<Pair<String, Long>> notesToPlayBetween(long timestampMin, long timestampMax) {
-        ArrayList<Pair<String, Long>> notesToSend = null;
+    public ArrayList<Phrase> phrasesToPlayBetween(long timestampMin, long timestampMax) {
+        ArrayList<Phrase> phrasesToSend = null;
         if (commandType == CommandTypes.AT) {
             // AT
             if (timestamp >= timestampMin && timestamp < timestampMax) {
                 // there is no mode for at, we just play all the listed notes.
-                notesToSend = new ArrayList<>();
-                for (int i = 0; i < notes.size(); i++) {
-                    notesToSend.add(delayedNote(notes.get(i), 0l));
-                }
+                phrasesToSend = new ArrayList<>();
+                phrasesToSend.add(getPhrase(0));
             }
         } else if (commandType == CommandTypes.EVERY) {
             // EVERY
-            long minMod = timestampMin % timestamp;
-            long maxMod = timestampMax % timestamp;
-            // We use modulo to know when to repeat regardless of how much time ellapsed.
-            // To repeat every 5s, we look for (time_ellapsed % 5s) = 0.
-            // 5s, 10s, 15s all leads to 0.
-            //
-            // if min > max, then min didn't loop but max did.
-            // That means 0 modulo timestamp is in the range.
-            // In other words the moment to repeat the event again is now.
-            if (minMod > maxMod) {
-                notesToSend = getCurrentNotes();
+            if (timestamp <= 0) return null;
+            // To repeat every 5s, we look for 5s, 10s, 15s... in ]min, max].
+            // Dividing by the timestamp tells how many times it was reached since zero,
+            // so the difference tells how many times the event must repeat in the range.
+            // It is usually 0 or 1, but it can be more if the range is longer than
+            // the timestamp. The cursor must then move once for each of them.
+            long fires = timestampMax / timestamp - Math.max(timestampMin, 0) / timestamp;
+            if (fires > 0) {
+                phrasesToSend = new ArrayList<>();
+                if (rules.getMissedFiresMode() == MissedFiresModes.COLLAPSE) {
+                    moveCursor(fires - 1);
+                    phrasesToSend.add(getCurrentPhrase());
+                } else {
+                    for (long i = 0; i < fires; i++) {
+                        phrasesToSend.add(getCurrentPhrase());
+                    }
+                }
             }
         }
         //nothing to send otherwise
-        return notesToSend;
+        return phrasesToSend;
+    }
+
+    /**
+     * Gives the next timestamp at which phrasesToPlayBetween() can return phrases, knowing that
+     * every time range up to the given timestamp has already been checked.
+     * It is used to schedule the command instead of checking it at every loop.
+     * @param checkedUntil the end of the last time range given to phrasesToPlayBetween()
+     * @return the timestamp, or -1 if the command will never play again.
+     */
+    public long nextFireTimeAfter(long checkedUntil) {
+        if (commandType == CommandTypes.AT) {
+            // AT plays when its timestamp is in [min, max[, so it is still to come
+            // if it is equal to the end of the range that was checked.
+            return (timestamp >= checkedUntil)? timestamp : -1;
+        } else if (commandType == CommandTypes.EVERY) {
+            // EVERY plays when a multiple of the timestamp is in ]min, max].
+            if (timestamp <= 0) return -1;
+            return (checkedUntil / timestamp + 1) * timestamp;
+        }
+        return -1;
     }
 
-    private Pair<String, Long> delayedNote(String note, Long delay) {
-        return new Pair<>(note, delay);
+    private DelayedNote delayedNote(int pitch, long delay) {
+        return new DelayedNote(pitch, delay);
     }
 
     /**
-     * Returns the list of notes to play based on the cursor position and the play mode.
+     * Returns the phrase to play based on the cursor position and the play mode.
      * It automatically increments the cursor as well!
      * @return
      */
-    private ArrayList<Pair<String, Long>> getCurrentNotes() {
-        ArrayList<Pair<String, Long>> notesToReturn = new ArrayList<>();
-        if (playMode == PlayModeTypes.SCALE) {
+    private Phrase getCurrentPhrase() {
+        Phrase phrase = getPhrase(cursor);
+        moveCursor(1);
+        return phrase;
+    }
+
+    /**
+     * Returns the phrase played at the given cursor position, building it the first time
+     * (or taking the equal one of another command).
+     * @param position
+     * @return
+     */
+    private Phrase getPhrase(int position) {
+        if (phrases == null) phrases = new Phrase[getCycleLength()];
+        if (phrases[position] == null) phrases[position] = rules.internPhrase(new Phrase(buildNotes(position)));
+        return phrases[position];
+    }
+
+    /**
+     * Returns all the phrases the command can play, one for each cursor position.
+     * @return
+     */
+    public ArrayList<Phrase> getAllPhrases() {
+        ArrayList<Phrase> allPhrases = new ArrayList<>();
+        for (int i = 0; i < getCycleLength(); i++) {
+            allPhrases.add(getPhrase(i));
+        }
+        return allPhrases;
+    }
+
+    /**
+     * Builds the list of notes to play for the given cursor position, based on the play mode.
+     * @param position
+     * @return
+     */
+    private ArrayList<DelayedNote> buildNotes(int position) {
+        ArrayList<DelayedNote> notesToReturn = new ArrayList<>();
+        if (commandType == CommandTypes.AT) {
+            //AT
+            // all the listed notes at once
+            for (int i = 0; i < pitches.length; i++) {
+                notesToReturn.add(delayedNote(pitches[i], 0l));
+            }
+
+        } else if (playMode == PlayModeTypes.SCALE) {
             //SCALE
             // add curent note
-            notesToReturn.add(delayedNote(notes.get(cursor), 0l));
-            cursor = (cursor+1) % notes.size();
+            notesToReturn.add(delayedNote(pitches[position], 0l));
 
         } else if (playMode == PlayModeTypes.ARPEGGIO) {
             //ARPEGGIO
             // add all notes up to current with delay
-            for (int i = 0; i < cursor+1; i++) {
-                notesToReturn.add(delayedNote(notes.get(i), i * rules.getNotesDelayMs()));
+            for (int i = 0; i < position+1; i++) {
+                notesToReturn.add(delayedNote(pitches[i], i * rules.getNotesDelayMs()));
             }
-            cursor = (cursor+1) % notes.size();
 
         } else if (playMode == PlayModeTypes.REPEAT) {
             //REPEAT
             //add all notes "cursor" times with delay
-            for (int i = 0; i < cursor+1; i++) {
-                for (int j = 0; j < notes.size(); j++) {
-                    notesToReturn.add(delayedNote(notes.get(j), i * rules.getNotesDelayMs()));
+            for (int i = 0; i < position+1; i++) {
+                for (int j = 0; j < pitches.length; j++) {
+                    notesToReturn.add(delayedNote(pitches[j], i * rules.getNotesDelayMs()));
                 }
             }
-            cursor = (cursor+1) % repeatModeMax;
 
         }
         return notesToReturn;
     }
 
+    /**
+     * Number of notes of the phrase played at the given cursor position, without building it.
+     * @param position
+     * @return
+     */
+    public int getNotesCount(int position) {
+        if (commandType == CommandTypes.AT) return pitches.length;
+        if (playMode == PlayModeTypes.SCALE) return 1;
+        if (playMode == PlayModeTypes.ARPEGGIO) return position + 1;
+        return (position + 1) * pitches.length; //REPEAT
+    }
+
+    /**
+     * Delay of the last note of the phrase played at the given cursor position, without building it.
+     * @param position
+     * @return
+     */
+    public long getLastDelayMs(int position) {
+        if (commandType == CommandTypes.AT || playMode == PlayModeTypes.SCALE) return 0;
+        return position * rules.getNotesDelayMs(); //ARPEGGIO and REPEAT
+    }
+
+    /**
+     * Number of cursor positions before the command plays the same phrase again.
+     * @return
+     */
+    public int getCycleLength() {
+        if (commandType == CommandTypes.AT) return 1;
+        return (playMode == PlayModeTypes.REPEAT)? repeatModeMax : pitches.length;
+    }
+
+    /**
+     * Moves the cursor as if the command was played the given number of times.
+     * @param fires
+     */
+    private void moveCursor(long fires) {
+        cursor = (int) ((cursor + fires) % getCycleLength());
+    }
+
+    /**
+     * Forgets the phrases built so far, so that they are built again with
+     * the current settings (like the delay between notes).
+     */
+    public void clearPhrases() {
+        phrases = null;
+    }
+
+    public CommandTypes getCommandType() {
+        return commandType;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The pitch codes of the notes of the command (see Pitch).
+     * @return a copy, as the array is shared with commands using the same notes
+     */
+    public byte[] getPitches() {
+        return pitches.clone();
+    }
+
+    /**
+     * Tells if the given command plays the same notes at the same times as this one,
+     * whatever its progress.
+     * @param other
+     * @return
+     */
+    public boolean hasSameDefinitionAs(Command other) {
+        return commandType == other.commandType
+                && timestamp == other.timestamp
+                && playMode == other.playMode
+                && repeatModeMax == other.repeatModeMax
+                && Arrays.equals(pitches, other.pitches);
+    }
+
+    /**
+     * Hash code consistent with hasSameDefinitionAs().
+     * @return
+     */
+    public int definitionHashCode() {
+        int hash = commandType.hashCode();
+        hash = 31 * hash + (int) (timestamp ^ (timestamp >>> 32));
+        hash = 31 * hash + playMode.hashCode();
+        hash = 31 * hash + repeatModeMax;
+        hash = 31 * hash + Arrays.hashCode(pitches);
+        return hash;
+    }
+
+    /**
+     * Continues from the progress of an equivalent command (see hasSameDefinitionAs()).
+     * @param other
+     */
+    public void takeCursorFrom(Command other) {
+        cursor = other.cursor;
+    }
+
     /**
      * Resets the command to its original state (resets the cursor position).
      */
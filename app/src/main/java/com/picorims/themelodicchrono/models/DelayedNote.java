@@ -0,0 +1,57 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.models;
+
+/**
+ * A note to play, with the delay after which it should be played.
+ */
+public class DelayedNote {
+    public final int pitch; //see Pitch
+    public final long delayMs;
+
+    public DelayedNote(int pitch, long delayMs) {
+        this.pitch = pitch;
+        this.delayMs = delayMs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DelayedNote)) return false;
+        DelayedNote other = (DelayedNote) o;
+        return delayMs == other.delayMs && pitch == other.pitch;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * pitch + (int) (delayMs ^ (delayMs >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Pitch.toName(pitch) + "+" + delayMs + "ms";
+    }
+}
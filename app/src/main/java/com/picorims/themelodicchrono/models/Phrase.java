@@ -0,0 +1,67 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The notes played by one fire of a command, with their delays.
+ * The commands of a set of rules give the same Phrase object for the same notes
+ * (until the delay between notes changes), and phrases with the same notes are equal,
+ * so it can be used as a key to cache what is derived from it, like its sound.
+ */
+public class Phrase {
+    private final List<DelayedNote> notes;
+    private final int hashCode;
+
+    public Phrase(List<DelayedNote> notes) {
+        this.notes = Collections.unmodifiableList(notes);
+        this.hashCode = notes.hashCode();
+    }
+
+    public List<DelayedNote> getNotes() {
+        return notes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Phrase)) return false;
+        Phrase other = (Phrase) o;
+        return hashCode == other.hashCode && notes.equals(other.notes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return notes.toString();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.models;
+
+/**
+ * Converts notes between their name and their pitch code.
+ * A pitch code is the MIDI note number (A4 = 69), so it fits in a byte
+ * and can be used without any string work once the rules are parsed.
+ */
+public class Pitch {
+    public static final int A4 = 69;
+    public static final int C4 = 60;
+    // semitones from C for each note letter, from A to G
+    private static final int[] LETTER_OFFSETS = {9, 11, 0, 2, 4, 5, 7};
+    private static final String[] NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+
+    /**
+     * Gives the pitch code of the given note of the fourth octave.
+     * @param name note letter (ABCDEFG) with eventually # or b
+     * @return
+     */
+    public static int fromName(String name) {
+        int pitch = C4 + LETTER_OFFSETS[name.charAt(0) - 'A'];
+        if (name.length() == 2) {
+            if (name.charAt(1) == '#') pitch++;
+            if (name.charAt(1) == 'b') pitch--;
+        }
+        return pitch;
+    }
+
+    /**
+     * Gives a name of the note with the given pitch code (using sharps).
+     * @param pitch
+     * @return
+     */
+    public static String toName(int pitch) {
+        return NAMES[pitch % 12] + (pitch / 12 - 1);
+    }
+
+    /**
+     * Gives the frequency of the note with the given pitch code.
+     * @param pitch
+     * @return
+     */
+    public static double toHz(int pitch) {
+        // *2 = +1 octave so 12, 24, 36... are octaves.
+        // there are twelve semitones in an octave, so we divide by 12 to access them all.
+        // based on A 440.
+        // 440 * 2^(noteIndex/12)
+        return 440 * Math.pow(2, ((double) (pitch - A4)) / 12);
+    }
+}
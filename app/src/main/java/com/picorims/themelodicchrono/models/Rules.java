@@ -27,10 +27,14 @@ package com.picorims.themelodicchrono.models;
 import static com.picorims.themelodicchrono.models.Units.UNITS;
 
 import android.util.Log;
-import android.util.Pair;
+
+import com.picorims.themelodicchrono.debug.Metrics;
+import com.picorims.themelodicchrono.debug.Tracing;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
@@ -39,10 +43,19 @@ import java.util.List;
  */
 public class Rules {
     public static final String TAG = "Rules";
+    public static final double DEFAULT_NOTE_DURATION = 0.5; //in seconds
     private boolean successfullyParsed;
     private String errorMessage = null;
     private ArrayList<Command> commands;
+    private TimingWheel schedule; //tells which commands may play, using their index in commands
     private long notesDelayMs;
+    // playing every missed fire would stack them on the same chunk of sound
+    private Command.MissedFiresModes missedFiresMode = Command.MissedFiresModes.COLLAPSE;
+    private final ArrayList<Phrase> phrasesToPlay = new ArrayList<>(); //reused by getPhrasesToPlay()
+    private final HashMap<Phrase, Phrase> internedPhrases = new HashMap<>(); //shared by all commands
+    private boolean metricsEnabled = true;
+    private final double noteDuration;
+    private RulesAnalysis analysis;
 
     /**
      * Build the commands from the provided list of commands as a string.
@@ -52,15 +65,34 @@ public class Rules {
      * @param notesDelayMs
      */
     public Rules(String commandsStr, long notesDelayMs) {
+        this(commandsStr, notesDelayMs, DEFAULT_NOTE_DURATION);
+    }
+
+    /**
+     * Same as Rules(commandsStr, notesDelayMs), with the duration of the notes
+     * used to analyse what the rules ask from the device (see getAnalysis()).
+     * @param commandsStr
+     * @param notesDelayMs
+     * @param noteDuration duration of each note in seconds
+     */
+    public Rules(String commandsStr, long notesDelayMs, double noteDuration) {
+        this.noteDuration = noteDuration;
         try {
             commands = new ArrayList<>();
             loadRules(commandsStr);
+            schedule = new TimingWheel(commands.size());
+            scheduleAll();
             successfullyParsed = true;
             this.notesDelayMs = notesDelayMs;
         } catch (IllegalRulesException e) {
+            //behave as an empty set of rules
+            commands.clear();
+            schedule = new TimingWheel(0);
             errorMessage = e.getMessage();
             successfullyParsed = false;
         }
+        analysis = new RulesAnalysis(commands, noteDuration);
+        phrasesToPlay.ensureCapacity(Math.min(analysis.getPeakVoices(), commands.size()));
     }
 
     /**
@@ -77,6 +109,51 @@ public class Rules {
      */
     public void setNotesDelayMs(long notesDelayMs) {
         this.notesDelayMs = notesDelayMs;
+        //phrases bake the delay in
+        internedPhrases.clear();
+        for (Command c : commands) {
+            c.clearPhrases();
+        }
+        analysis = new RulesAnalysis(commands, noteDuration);
+    }
+
+    /**
+     * Tells if getPhrasesToPlay() adds to the global Metrics. It is turned off
+     * while the rules are only simulated (see WarmUp), so that the counters only
+     * describe what the chrono played.
+     * @param metricsEnabled
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * The phrase equal to the given one that commands already use, so that
+     * commands playing the same notes share the same Phrase object.
+     * @param phrase
+     * @return
+     */
+    Phrase internPhrase(Phrase phrase) {
+        Phrase interned = internedPhrases.get(phrase);
+        if (interned != null) return interned;
+        internedPhrases.put(phrase, phrase);
+        return phrase;
+    }
+
+    /**
+     * what EVERY commands do when they should have played several times since the last check
+     * @return
+     */
+    public Command.MissedFiresModes getMissedFiresMode() {
+        return missedFiresMode;
+    }
+
+    /**
+     * what EVERY commands do when they should have played several times since the last check
+     * @param missedFiresMode
+     */
+    public void setMissedFiresMode(Command.MissedFiresModes missedFiresMode) {
+        this.missedFiresMode = missedFiresMode;
     }
 
     /**
@@ -96,6 +173,14 @@ public class Rules {
         return errorMessage;
     }
 
+    /**
+     * What the rules ask from the device at worst (voices, notes per second, etc.)
+     * @return
+     */
+    public RulesAnalysis getAnalysis() {
+        return analysis;
+    }
+
     /**
      * Try to load rules by parsing the command and loading its data. If a syntax error is met,
      * an exception is thrown.
@@ -108,6 +193,8 @@ public class Rules {
         String validateTimestamp = "^.*[^:]$";
         String validateNoteList = "^.*[^,]$";
         List<String> commandsList = Arrays.asList(commandsStr.split("\n"));
+        // commands with the same note list share the same pitch codes
+        HashMap<String, byte[]> internedNoteLists = new HashMap<>();
 
         for (int i = 0; i < commandsList.size(); i++) {
             String cmd = commandsList.get(i);
@@ -132,8 +219,15 @@ public class Rules {
             if (!noteList.matches(validateNoteList)) {
                 throw new IllegalRulesException("Invalid note list at line " + i + ":" + noteList);
             }
-            ArrayList<String> notes = new ArrayList<>();
-            notes.addAll(Arrays.asList(noteList.split(",")));
+            byte[] pitches = internedNoteLists.get(noteList);
+            if (pitches == null) {
+                String[] noteNames = noteList.split(",");
+                pitches = new byte[noteNames.length];
+                for (int j = 0; j < noteNames.length; j++) {
+                    pitches[j] = (byte) Pitch.fromName(noteNames[j]);
+                }
+                internedNoteLists.put(noteList, pitches);
+            }
 
             //get repeat rule if exist
             String notePlayMode = (args.size() > 4)? args.get(4) : "";
@@ -159,9 +253,9 @@ public class Rules {
 
             //add command
             if (cmdType == Command.CommandTypes.AT) {
-                commands.add(new Command(this, cmdType, msTimestamp, notes));
+                commands.add(new Command(this, cmdType, msTimestamp, pitches));
             } else if (cmdType == Command.CommandTypes.EVERY) {
-                commands.add(new Command(this, cmdType, msTimestamp, notes, notePlayModeType, maxRepeats));
+                commands.add(new Command(this, cmdType, msTimestamp, pitches, notePlayModeType, maxRepeats));
             } else {
                 throw new IllegalRulesException("Unknown command: '" + cmdName + "'");
             }
@@ -211,20 +305,97 @@ public class Rules {
     }
 
     /**
-     * Returns the list of notes to play between two given timestamps.
+     * Returns the list of phrases to play between two given timestamps.
      * It is assumed that the reference for the timestamps is zero (the start of the chrono),
      * and NOT the unix start moment.
+     * Only the commands that are due according to the schedule are checked.
+     * @param timestampMin
+     * @param timestampMax
+     * @return the phrases. The list is reused, so it is only valid until the next call.
+     */
+    public ArrayList<Phrase> getPhrasesToPlay(long timestampMin, long timestampMax) {
+        long startNs = System.nanoTime();
+        Tracing.begin(Tracing.RULES_PHRASES_TO_PLAY);
+        try {
+            phrasesToPlay.clear();
+            int notesCount = 0;
+            // the chrono went back in time without a reset, start again from zero.
+            if (timestampMax < schedule.getCurrentTime()) scheduleAll();
+
+            int dueCount = schedule.advanceTo(timestampMax);
+            int[] due = schedule.getExpired();
+            // keep the order in which commands were written, as a full scan would
+            Arrays.sort(due, 0, dueCount);
+            for (int i = 0; i < dueCount; i++) {
+                Command c = commands.get(due[i]);
+                ArrayList<Phrase> phrasesOfCommand = c.phrasesToPlayBetween(timestampMin, timestampMax);
+                if (phrasesOfCommand != null) {
+                    phrasesToPlay.addAll(phrasesOfCommand);
+                    for (Phrase p : phrasesOfCommand) notesCount += p.getNotes().size();
+                }
+                long next = c.nextFireTimeAfter(timestampMax);
+                if (next != -1) schedule.schedule(due[i], next);
+            }
+            if (metricsEnabled) Metrics.NOTES_SCHEDULED.add(notesCount);
+            return phrasesToPlay;
+        } finally {
+            Tracing.end();
+            if (metricsEnabled) Metrics.RULES_US.add(Metrics.microsSince(startNs));
+        }
+    }
+
+    /**
+     * Returns the list of notes to play between two given timestamps, like
+     * getPhrasesToPlay() but with the notes of all phrases in a single list.
+     * @param timestampMin
+     * @param timestampMax
+     * @return
+     */
+    public ArrayList<DelayedNote> getNotesToPlay(long timestampMin, long timestampMax) {
+        return flatten(getPhrasesToPlay(timestampMin, timestampMax));
+    }
+
+    /**
+     * Same as getNotesToPlay(), but checks every command at each call.
+     * This is the reference behaviour of the schedule, kept for tests and benchmarks.
      * @param timestampMin
      * @param timestampMax
      * @return
      */
-    public ArrayList<Pair<String, Long>> getNotesToPlay(long timestampMin, long timestampMax) {
-        ArrayList<Pair<String, Long>> notesToPlay = new ArrayList<>();
+    ArrayList<DelayedNote> scanNotesToPlay(long timestampMin, long timestampMax) {
+        ArrayList<Phrase> phrasesToPlay = new ArrayList<>();
         for (Command c: commands) {
-            ArrayList<Pair<String, Long>> notesOfCommand = c.notesToPlayBetween(timestampMin, timestampMax);
-            if (notesOfCommand != null) notesToPlay.addAll(notesOfCommand);
+            ArrayList<Phrase> phrasesOfCommand = c.phrasesToPlayBetween(timestampMin, timestampMax);
+            if (phrasesOfCommand != null) phrasesToPlay.addAll(phrasesOfCommand);
+        }
+        return flatten(phrasesToPlay);
+    }
+
+    private ArrayList<DelayedNote> flatten(ArrayList<Phrase> phrases) {
+        ArrayList<DelayedNote> notes = new ArrayList<>();
+        for (Phrase p : phrases) notes.addAll(p.getNotes());
+        return notes;
+    }
+
+    /**
+     * Returns every distinct phrase the commands can play, by cursor position:
+     * the first phrase of every command comes first, then the second one, etc.
+     * @return
+     */
+    public ArrayList<Phrase> getAllPhrases() {
+        ArrayList<ArrayList<Phrase>> phrasesOfCommands = new ArrayList<>();
+        int longestCycle = 0;
+        for (Command c : commands) {
+            phrasesOfCommands.add(c.getAllPhrases());
+            longestCycle = Math.max(longestCycle, c.getCycleLength());
         }
-        return notesToPlay;
+        LinkedHashSet<Phrase> allPhrases = new LinkedHashSet<>();
+        for (int position = 0; position < longestCycle; position++) {
+            for (ArrayList<Phrase> phrasesOfCommand : phrasesOfCommands) {
+                if (position < phrasesOfCommand.size()) allPhrases.add(phrasesOfCommand.get(position));
+            }
+        }
+        return new ArrayList<>(allPhrases);
     }
 
     /**
@@ -234,5 +405,58 @@ public class Rules {
         for (Command c : commands) {
             c.reset();
         }
+        scheduleAll();
+    }
+
+    /**
+     * Takes over the progress of the rules being replaced: commands found in both rule sets
+     * keep their cursor instead of starting over, and every command is planned from the
+     * given time. It must be called by the thread playing the rules, before using them.
+     * @param previous the rules being replaced, or null if there were none
+     * @param checkedUntil the end of the last time range checked with the previous rules
+     */
+    public void takeOverFrom(Rules previous, long checkedUntil) {
+        if (previous != null) {
+            HashMap<Integer, ArrayList<Command>> previousCommands = new HashMap<>();
+            for (Command c : previous.commands) {
+                ArrayList<Command> sameHash = previousCommands.get(c.definitionHashCode());
+                if (sameHash == null) {
+                    sameHash = new ArrayList<>();
+                    previousCommands.put(c.definitionHashCode(), sameHash);
+                }
+                sameHash.add(c);
+            }
+            for (Command c : commands) {
+                ArrayList<Command> sameHash = previousCommands.get(c.definitionHashCode());
+                if (sameHash == null) continue;
+                for (int i = 0; i < sameHash.size(); i++) {
+                    if (sameHash.get(i).hasSameDefinitionAs(c)) {
+                        //each previous command gives its cursor only once (duplicated lines)
+                        c.takeCursorFrom(sameHash.remove(i));
+                        break;
+                    }
+                }
+            }
+        }
+        scheduleAll(checkedUntil);
+    }
+
+    /**
+     * Clears the schedule and plans every command from the start of the chrono.
+     */
+    private void scheduleAll() {
+        scheduleAll(0);
+    }
+
+    /**
+     * Clears the schedule and plans every command from the given time.
+     * @param checkedUntil
+     */
+    private void scheduleAll(long checkedUntil) {
+        schedule.clear(checkedUntil);
+        for (int i = 0; i < commands.size(); i++) {
+            long next = commands.get(i).nextFireTimeAfter(checkedUntil);
+            if (next != -1) schedule.schedule(i, next);
+        }
     }
 }
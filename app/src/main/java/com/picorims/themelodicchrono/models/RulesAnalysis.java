@@ -0,0 +1,230 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a set of rules asks from the device, computed from the commands alone (without
+ * playing them), so that a set that would overload the device can be detected up front
+ * and the audio pools and caches can be sized for it.
+ *
+ * Every EVERY command fires at the same time at each multiple of the hyperperiod, so the
+ * worst case is assumed to be all of them sounding at once, each one with as many
+ * overlapping fires as its period allows, plus the worst overlap of the AT commands.
+ */
+public class RulesAnalysis {
+    public static final long UNBOUNDED = -1;
+    // rough orders of magnitude, the synthesis metrics give the real cost on a device
+    private static final double MIX_NS_PER_VOICE_SAMPLE = 3;
+    private static final double SYNTH_NS_PER_NOTE_SAMPLE = 20;
+
+    private final double noteDuration;
+    private final long hyperperiodMs;
+    private final int peakVoices;
+    private final int peakNotes;
+    private final double notesPerSecond;
+    private final long phrasesMs;
+
+    /**
+     * Limits a set of rules should stay within.
+     */
+    public static class Budget {
+        public final int maxVoices;
+        public final double maxNotesPerSecond;
+        public final double maxCpuLoad;
+
+        /**
+         * @param maxVoices sounds played at once (a phrase being one sound)
+         * @param maxNotesPerSecond
+         * @param maxCpuLoad estimated part of one core used by synthesis, in [0;1]
+         */
+        public Budget(int maxVoices, double maxNotesPerSecond, double maxCpuLoad) {
+            this.maxVoices = maxVoices;
+            this.maxNotesPerSecond = maxNotesPerSecond;
+            this.maxCpuLoad = maxCpuLoad;
+        }
+    }
+
+    /**
+     * Analyses the given commands.
+     * @param commands
+     * @param noteDuration duration of each note in seconds
+     */
+    public RulesAnalysis(List<Command> commands, double noteDuration) {
+        this.noteDuration = noteDuration;
+        long noteMs = (long) Math.ceil(noteDuration * 1000);
+        long hyperperiod = 0;
+        int everyVoices = 0;
+        int everyNotes = 0;
+        double notes = 0;
+        long phrases = 0;
+        ArrayList<long[]> atEvents = new ArrayList<>(); //{time, +1 or -1, notes}
+
+        for (Command c : commands) {
+            int cycle = c.getCycleLength();
+            if (cycle <= 0) continue;
+            // the longest phrase is the last one of the cycle
+            long longestMs = c.getLastDelayMs(cycle - 1) + noteMs;
+            int mostNotes = c.getNotesCount(cycle - 1);
+            long totalNotes = 0;
+            for (int i = 0; i < cycle; i++) {
+                totalNotes += c.getNotesCount(i);
+                phrases += c.getLastDelayMs(i) + noteMs;
+            }
+
+            long timestamp = c.getTimestamp();
+            if (c.getCommandType() == Command.CommandTypes.EVERY) {
+                if (timestamp <= 0) continue;
+                hyperperiod = (hyperperiod == 0)? timestamp : lcm(hyperperiod, timestamp);
+                // fires of the same command overlap when its phrases outlast its period
+                int overlapping = (int) ((longestMs + timestamp - 1) / timestamp);
+                everyVoices += overlapping;
+                everyNotes += overlapping * mostNotes;
+                notes += (double) totalNotes / cycle * 1000 / timestamp;
+            } else {
+                atEvents.add(new long[]{timestamp, 1, mostNotes});
+                atEvents.add(new long[]{timestamp + longestMs, -1, -mostNotes});
+            }
+        }
+
+        // sweep the AT phrases in time order, a phrase ending before another one starting
+        Collections.sort(atEvents, (a, b) -> (a[0] != b[0])? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        int atVoices = 0, maxAtVoices = 0;
+        int atNotes = 0, maxAtNotes = 0;
+        for (long[] event : atEvents) {
+            atVoices += event[1];
+            atNotes += event[2];
+            maxAtVoices = Math.max(maxAtVoices, atVoices);
+            maxAtNotes = Math.max(maxAtNotes, atNotes);
+        }
+
+        hyperperiodMs = hyperperiod;
+        peakVoices = everyVoices + maxAtVoices;
+        peakNotes = everyNotes + maxAtNotes;
+        notesPerSecond = notes;
+        phrasesMs = phrases;
+    }
+
+    /**
+     * Time after which all EVERY commands fire together again (the LCM of their periods).
+     * @return the time in ms, 0 if there is no EVERY command, or UNBOUNDED if it doesn't fit in a long.
+     */
+    public long getHyperperiodMs() {
+        return hyperperiodMs;
+    }
+
+    /**
+     * Worst number of phrases sounding at the same time.
+     * @return
+     */
+    public int getPeakVoices() {
+        return peakVoices;
+    }
+
+    /**
+     * Worst number of notes sounding at the same time.
+     * @return
+     */
+    public int getPeakNotes() {
+        return peakNotes;
+    }
+
+    /**
+     * Average number of notes played per second by the EVERY commands.
+     * @return
+     */
+    public double getNotesPerSecond() {
+        return notesPerSecond;
+    }
+
+    /**
+     * Number of samples needed to keep the sound of every phrase of the rules
+     * (an upper bound, as commands can share phrases).
+     * @param sampleRate
+     * @return
+     */
+    public long estimateCacheSamples(int sampleRate) {
+        return phrasesMs * sampleRate / 1000;
+    }
+
+    /**
+     * Part of one core needed to mix the peak voices, and to synthesize the notes
+     * as they come if they are not cached.
+     * @param sampleRate
+     * @return
+     */
+    public double estimateCpuLoad(int sampleRate) {
+        double nsPerSecond = peakVoices * MIX_NS_PER_VOICE_SAMPLE * sampleRate
+                + notesPerSecond * noteDuration * sampleRate * SYNTH_NS_PER_NOTE_SAMPLE;
+        return nsPerSecond / 1e9;
+    }
+
+    /**
+     * Tells what goes over the given budget.
+     * @param budget
+     * @param sampleRate
+     * @return a warning to show to the user, or null if the budget is respected.
+     */
+    public String checkBudget(Budget budget, int sampleRate) {
+        StringBuilder warning = new StringBuilder();
+        if (peakVoices > budget.maxVoices) {
+            warning.append("\n- up to ").append(peakVoices).append(" sounds at once (max ")
+                    .append(budget.maxVoices).append(")");
+        }
+        if (notesPerSecond > budget.maxNotesPerSecond) {
+            warning.append("\n- ").append(Math.round(notesPerSecond)).append(" notes per second (max ")
+                    .append(Math.round(budget.maxNotesPerSecond)).append(")");
+        }
+        double cpuLoad = estimateCpuLoad(sampleRate);
+        if (cpuLoad > budget.maxCpuLoad) {
+            warning.append("\n- about ").append(Math.round(cpuLoad * 100)).append("% of a CPU core (max ")
+                    .append(Math.round(budget.maxCpuLoad * 100)).append("%)");
+        }
+        if (warning.length() == 0) return null;
+        return "Warning: these rules may be too heavy for the device:" + warning;
+    }
+
+    /**
+     * Least common multiple of two positive numbers.
+     * @param a
+     * @param b
+     * @return the LCM, or UNBOUNDED if a is UNBOUNDED or if the LCM doesn't fit in a long.
+     */
+    private static long lcm(long a, long b) {
+        if (a == UNBOUNDED) return UNBOUNDED;
+        long x = a, y = b;
+        while (y != 0) {
+            long t = x % y;
+            x = y;
+            y = t;
+        }
+        long aOverGcd = a / x;
+        if (aOverGcd > Long.MAX_VALUE / b) return UNBOUNDED;
+        return aOverGcd * b;
+    }
+}
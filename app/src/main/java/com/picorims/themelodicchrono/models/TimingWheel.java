@@ -0,0 +1,251 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.models;
+
+import static com.picorims.themelodicchrono.models.Units.UNITS;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical timing wheel that tells which scheduled items are due as the chrono advances.
+ * Items are identified by a dense integer id (for example their index in a list), and are
+ * stored in buckets of one millisecond, one second, one minute and one hour, plus an overflow
+ * bucket for items due more than a day ahead. Scheduling an item is O(1), and advancing
+ * the wheel only costs work for the buckets that expire (and the rare cascades from a coarse
+ * level to a finer one), regardless of how many items are scheduled.
+ *
+ * Once an item has expired, it is not tracked anymore until it is scheduled again.
+ */
+public class TimingWheel {
+    private static final int LEVELS = 4;
+    // duration covered by one bucket of each level, the last one being the overflow "level".
+    private static final long[] RESOLUTIONS = {
+            1,                      // ms
+            UNITS.get("s"),
+            UNITS.get("m"),
+            UNITS.get("h"),
+            24L * UNITS.get("h")    // overflow
+    };
+
+    private final int[][][] slots = new int[LEVELS + 1][][]; //[level][bucket][ids]
+    private final int[][] slotSizes = new int[LEVELS + 1][];
+    private final int[] levelSizes = new int[LEVELS + 1]; //number of ids stored in each level
+    private int[] spare = new int[8]; //swapped with a bucket when it is cascaded
+    private int[] pending = new int[8]; //ids scheduled at or before the current time
+    private int pendingSize = 0;
+    private int[] expired = new int[8];
+    private int expiredSize = 0;
+    private long[] dues;
+    private long currentTime = 0;
+
+    /**
+     * Creates an empty wheel starting at zero.
+     * @param capacity the number of ids (from 0 to capacity-1) that can be scheduled.
+     */
+    public TimingWheel(int capacity) {
+        dues = new long[Math.max(capacity, 1)];
+        for (int level = 0; level <= LEVELS; level++) {
+            int buckets = (level == LEVELS)? 1 : (int) (RESOLUTIONS[level + 1] / RESOLUTIONS[level]);
+            slots[level] = new int[buckets][];
+            slotSizes[level] = new int[buckets];
+            for (int i = 0; i < buckets; i++) slots[level][i] = new int[2];
+        }
+    }
+
+    /**
+     * The time up to which the wheel has been advanced.
+     * @return
+     */
+    public long getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Schedules an item so that it expires once the wheel reaches the given time.
+     * If the time is already reached, the item expires on the next call to advanceTo().
+     * An item must not be scheduled again before it expired.
+     * @param id the item identifier
+     * @param due the time at which the item expires
+     */
+    public void schedule(int id, long due) {
+        dues[id] = due;
+        if (due <= currentTime) {
+            pending = append(pending, pendingSize++, id);
+        } else {
+            place(id);
+        }
+    }
+
+    /**
+     * Moves the wheel forward up to the given time (included), collecting all items that
+     * expire on the way. The expired items are available through getExpired().
+     * @param time the time to reach. It must not be lower than getCurrentTime().
+     * @return the number of expired items.
+     */
+    public int advanceTo(long time) {
+        if (time < currentTime) throw new IllegalArgumentException("the wheel cannot go back in time");
+        expiredSize = 0;
+        for (int i = 0; i < pendingSize; i++) {
+            expired = append(expired, expiredSize++, pending[i]);
+        }
+        pendingSize = 0;
+
+        while (currentTime < time) {
+            int lowestLevel = lowestNonEmptyLevel();
+            if (lowestLevel == -1) {
+                //nothing scheduled, we can go straight to the target
+                currentTime = time;
+                break;
+            }
+            // The finer levels are empty, so we can skip to the next bucket of the
+            // lowest level that has something in it.
+            long resolution = RESOLUTIONS[lowestLevel];
+            long next = (currentTime / resolution + 1) * resolution;
+            if (next > time) {
+                currentTime = time;
+                break;
+            }
+            currentTime = next;
+
+            //bring down the items of the coarse buckets we just entered, from the top
+            for (int level = LEVELS; level >= 1; level--) {
+                if (currentTime % RESOLUTIONS[level] == 0) cascade(level, bucketOf(level, currentTime));
+            }
+            expireBucket(bucketOf(0, currentTime));
+        }
+        return expiredSize;
+    }
+
+    /**
+     * The items that expired during the last call to advanceTo(). Only the first n values
+     * are relevant, n being the value returned by advanceTo(). The array is reused.
+     * @return
+     */
+    public int[] getExpired() {
+        return expired;
+    }
+
+    /**
+     * Removes every scheduled item and puts back the wheel at zero.
+     */
+    public void clear() {
+        clear(0);
+    }
+
+    /**
+     * Removes every scheduled item and puts the wheel at the given time.
+     * @param time
+     */
+    public void clear(long time) {
+        for (int level = 0; level <= LEVELS; level++) {
+            Arrays.fill(slotSizes[level], 0);
+            levelSizes[level] = 0;
+        }
+        pendingSize = 0;
+        expiredSize = 0;
+        currentTime = time;
+    }
+
+    /**
+     * Stores an item in the finest level that will not wrap around before the item is due.
+     * Items already due are directly added to the expired items.
+     * @param id
+     */
+    private void place(int id) {
+        long due = dues[id];
+        if (due <= currentTime) {
+            expired = append(expired, expiredSize++, id);
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS && due / RESOLUTIONS[level + 1] != currentTime / RESOLUTIONS[level + 1]) {
+            level++;
+        }
+        int bucket = bucketOf(level, due);
+        slots[level][bucket] = append(slots[level][bucket], slotSizes[level][bucket]++, id);
+        levelSizes[level]++;
+    }
+
+    /**
+     * Empties a bucket of a coarse level by placing its items again, now that
+     * the wheel is closer to their due time.
+     * @param level
+     * @param bucket
+     */
+    private void cascade(int level, int bucket) {
+        int size = slotSizes[level][bucket];
+        if (size == 0) return;
+        // swap the bucket with the spare one, as the overflow items
+        // that are still far away come back into the same bucket.
+        int[] ids = slots[level][bucket];
+        slots[level][bucket] = spare;
+        slotSizes[level][bucket] = 0;
+        levelSizes[level] -= size;
+        for (int i = 0; i < size; i++) {
+            place(ids[i]);
+        }
+        spare = ids;
+    }
+
+    /**
+     * Adds all items of a millisecond bucket to the expired items.
+     * @param bucket
+     */
+    private void expireBucket(int bucket) {
+        int size = slotSizes[0][bucket];
+        int[] ids = slots[0][bucket];
+        for (int i = 0; i < size; i++) {
+            expired = append(expired, expiredSize++, ids[i]);
+        }
+        slotSizes[0][bucket] = 0;
+        levelSizes[0] -= size;
+    }
+
+    private int lowestNonEmptyLevel() {
+        for (int level = 0; level <= LEVELS; level++) {
+            if (levelSizes[level] > 0) return level;
+        }
+        return -1;
+    }
+
+    private int bucketOf(int level, long time) {
+        if (level == LEVELS) return 0;
+        return (int) ((time / RESOLUTIONS[level]) % slots[level].length);
+    }
+
+    /**
+     * Writes a value at the given index, growing the array if needed.
+     * @param array
+     * @param index
+     * @param value
+     * @return the array to use from now on
+     */
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) array = Arrays.copyOf(array, array.length * 2);
+        array[index] = value;
+        return array;
+    }
+}
@@ -0,0 +1,477 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.sound;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+import com.picorims.themelodicchrono.debug.Metrics;
+import com.picorims.themelodicchrono.debug.Tracing;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Plays all notes through one long lived output, an AudioTrack on the device (see AudioSink).
+ * A synthesis thread mixes the active voices in fixed size chunks into a ring buffer,
+ * and an audio thread drains it continuously into the output (writing silence between notes).
+ * After a while without any note, both threads wait and the output is paused, until the
+ * next note comes. Memory does not depend on the length of notes, and a new note starts
+ * within one chunk of synthesis instead of waiting for the whole note to be generated.
+ *
+ * Chunks are stored in the format of the output (see PcmChunk): the voices are mixed
+ * straight into the chunk that is later given to the output, without packing or copying.
+ *
+ * Synthesis runs at the native output rate, with chunks made of whole native bursts, so that
+ * the system doesn't have to resample and can use its fast mixer. If the output refuses the
+ * native rate, it plays at a fallback rate and the engine resamples the chunks itself.
+ *
+ * The shared instance plays on the device. Other engines can be created with another
+ * output, for example to load test the whole pipeline on a machine without a device.
+ */
+public class AudioEngine {
+    public static final String TAG = "AudioEngine";
+    // used when the device doesn't tell its native output
+    private static final int FALLBACK_SAMPLE_RATE = 44100;
+    private static final int FALLBACK_BURST_FRAMES = 256;
+    private static final int MIN_CHUNK_FRAMES = 128;
+    private static final int RING_CHUNKS = 3;
+    private static final float VOLUME = 0.5f;
+    private static final double IDLE_SECONDS = 2; //of silence before pausing the output
+    // preferred output unless another one is asked, SHORT_ARRAY being used if the output refuses it
+    private static final PcmChunk.Formats OUTPUT_FORMAT = PcmChunk.Formats.FLOAT_ARRAY;
+
+    private static AudioEngine instance = null;
+
+    private final int sampleRate; //rate of synthesis
+    private final int burstFrames;
+    private final int chunkFrames; //whole bursts
+    private final AudioSink sink;
+    private final PcmChunk.Formats preferredFormat;
+    private PcmChunk.Formats format; //accepted by the output
+    private int outputRate;
+    private Resampler resampler = null; //used if the output doesn't play at the rate of synthesis
+    private RingBuffer ring;
+    private final ArrayList<Voice> voices = new ArrayList<>(); //only used by the synthesis thread
+    private volatile int reservedVoices = 0;
+    private final Object lock = new Object(); //used to wait for data or space in the ring
+    private final ConcurrentLinkedQueue<Voice> incoming = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Voice> synthesized = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = false;
+    private volatile boolean idle = false; //the synthesis waits for voices, the output can pause
+    private Thread synthesisThread;
+    private Thread audioThread;
+
+    /**
+     * The running engine, started on first use.
+     * @param context used to query the native output of the device
+     * @return
+     */
+    public static synchronized AudioEngine getInstance(Context context) {
+        if (instance == null) {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            int nativeBurst = -1;
+            if (audioManager != null) {
+                nativeBurst = parseProperty(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER));
+            }
+            instance = new AudioEngine(new AudioTrackSink(), getNativeSampleRate(context), nativeBurst, OUTPUT_FORMAT);
+            instance.start();
+        }
+        return instance;
+    }
+
+    /**
+     * The rate at which the device outputs sound without resampling it,
+     * found without starting the engine.
+     * @param context used to query the native output of the device
+     * @return the rate, or a default one if the device doesn't tell
+     */
+    public static int getNativeSampleRate(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        int nativeRate = -1;
+        if (audioManager != null) {
+            nativeRate = parseProperty(audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+        }
+        if (nativeRate <= 0) nativeRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        return (nativeRate > 0)? nativeRate : FALLBACK_SAMPLE_RATE;
+    }
+
+    /**
+     * Starts an engine playing into the given output, independently from the shared instance.
+     * @param sink
+     * @param sampleRate rate of synthesis
+     * @param burstFrames number of frames the output prefers to receive at a time
+     * @return the engine, to stop with close()
+     */
+    public static AudioEngine create(AudioSink sink, int sampleRate, int burstFrames) {
+        return create(sink, sampleRate, burstFrames, OUTPUT_FORMAT);
+    }
+
+    /**
+     * Same as create(sink, sampleRate, burstFrames), storing the chunks in the given format
+     * if the output accepts it.
+     * @param sink
+     * @param sampleRate rate of synthesis
+     * @param burstFrames number of frames the output prefers to receive at a time
+     * @param format
+     * @return the engine, to stop with close()
+     */
+    public static AudioEngine create(AudioSink sink, int sampleRate, int burstFrames, PcmChunk.Formats format) {
+        AudioEngine engine = new AudioEngine(sink, sampleRate, burstFrames, format);
+        engine.start();
+        return engine;
+    }
+
+    /**
+     * @param sink
+     * @param sampleRate the rate of synthesis, or -1 to use a default one
+     * @param burstFrames the burst of the output, or -1 to use a default one
+     * @param preferredFormat format of the chunks, SHORT_ARRAY being used if the output refuses it
+     */
+    private AudioEngine(AudioSink sink, int sampleRate, int burstFrames, PcmChunk.Formats preferredFormat) {
+        this.sink = sink;
+        this.preferredFormat = preferredFormat;
+        this.sampleRate = (sampleRate > 0)? sampleRate : FALLBACK_SAMPLE_RATE;
+        this.burstFrames = (burstFrames > 0)? burstFrames : FALLBACK_BURST_FRAMES;
+        chunkFrames = roundUpToBursts(MIN_CHUNK_FRAMES);
+        Log.i(TAG, "AudioEngine: " + this.sampleRate + "Hz, bursts of " + this.burstFrames + " frames");
+    }
+
+    /**
+     * The rate at which voices must be rendered.
+     * @return
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * The number of samples mixed at a time.
+     * @return
+     */
+    public int getChunkFrames() {
+        return chunkFrames;
+    }
+
+    /**
+     * The format of the chunks given to the output.
+     * @return the format, or null if the output couldn't be opened
+     */
+    public PcmChunk.Formats getFormat() {
+        return format;
+    }
+
+    /**
+     * Tells if the engine plays, which is not the case if its output couldn't be opened
+     * or stopped working.
+     * @return
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stops the shared engine if it is running and releases the audio track.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    /**
+     * Adds a voice to the mix. It starts playing on the next chunk.
+     * It is ignored if the engine couldn't start.
+     * @param voice
+     */
+    public void play(Voice voice) {
+        if (!running) return;
+        incoming.add(voice);
+        if (idle) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Prepares room for the given number of voices playing at once,
+     * so that the synthesis doesn't have to grow its pool while playing.
+     * @param count
+     */
+    public void reserveVoices(int count) {
+        reservedVoices = count;
+    }
+
+    private void start() {
+        // the native rate first, then the fallback one with our own resampling
+        int[] rates = {sampleRate, FALLBACK_SAMPLE_RATE};
+        PcmChunk.Formats[] formats = {preferredFormat, PcmChunk.Formats.SHORT_ARRAY};
+        boolean opened = false;
+        for (int r = 0; r < rates.length && !opened; r++) {
+            for (int f = 0; f < formats.length && !opened; f++) {
+                opened = sink.open(rates[r], formats[f], chunkFrames);
+                outputRate = rates[r];
+                format = formats[f];
+            }
+        }
+        if (!opened) {
+            Log.e(TAG, "start: couldn't open the output");
+            format = null;
+            return;
+        }
+        if (outputRate != sampleRate) {
+            Log.w(TAG, "start: " + sampleRate + "Hz output not available, resampling to " + outputRate + "Hz");
+            resampler = new Resampler(this::mixVoices, sampleRate, outputRate, chunkFrames);
+        }
+        if (format != preferredFormat) Log.w(TAG, "start: " + preferredFormat + " output not available, using " + format);
+        ring = new RingBuffer(RING_CHUNKS, format, chunkFrames);
+
+        running = true;
+        synthesisThread = new Thread(this::synthesisLoop, "AudioEngine-synthesis");
+        audioThread = new Thread(this::audioLoop, "AudioEngine-audio");
+        synthesisThread.start();
+        audioThread.start();
+    }
+
+    private void stop() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stops an engine created with create(sink, ...), and waits for its output to be closed.
+     * @throws InterruptedException
+     */
+    public void close() throws InterruptedException {
+        stop();
+        if (synthesisThread != null) synthesisThread.join();
+        if (audioThread != null) audioThread.join();
+    }
+
+    /**
+     * Fills the ring buffer chunk by chunk with the mix of all active voices.
+     */
+    private void synthesisLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int idleFrameLimit = (int) (IDLE_SECONDS * sampleRate);
+        int idleFrames = 0;
+        while (running) {
+            try {
+                synchronized (lock) {
+                    while (running && ring.availableToWrite() == 0) lock.wait();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!running) return;
+
+            int reserved = reservedVoices;
+            if (reserved > 0) {
+                voices.ensureCapacity(reserved);
+                reservedVoices = 0;
+            }
+            Voice newVoice;
+            while ((newVoice = incoming.poll()) != null) {
+                Tracing.endAsync(Tracing.NOTE_SCHEDULED, newVoice.getCookie());
+                Tracing.beginAsync(Tracing.NOTE_SYNTHESIZED, newVoice.getCookie());
+                voices.add(newVoice);
+            }
+            if (!voices.isEmpty()) {
+                idleFrames = 0;
+            } else if (idleFrames >= idleFrameLimit) {
+                if (!waitForVoices()) return;
+                idleFrames = 0;
+                continue;
+            } else {
+                idleFrames += chunkFrames;
+            }
+
+            long startNs = System.nanoTime();
+            Tracing.begin(Tracing.SYNTHESIS);
+            PcmChunk chunk = ring.getWriteChunk();
+            float[] mix = chunk.clearMix();
+            if (resampler == null) mixVoices(mix, chunkFrames);
+            else resampler.resample(mix, chunkFrames);
+            chunk.finish(VOLUME);
+            ring.commitWrite();
+            Tracing.end();
+            Metrics.SYNTH_US.add(Metrics.microsSince(startNs));
+            Metrics.SYNTH_CHUNKS.increment();
+
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Lets the output pause once it played what was synthesized, until a voice comes.
+     * @return false if the engine stopped in the meantime
+     */
+    private boolean waitForVoices() {
+        try {
+            synchronized (lock) {
+                idle = true;
+                lock.notifyAll();
+                while (running && incoming.isEmpty()) lock.wait();
+                idle = false;
+            }
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return running;
+    }
+
+    /**
+     * Adds the next samples of all active voices to the mix, at the rate of synthesis.
+     * @param mix
+     * @param length
+     */
+    private void mixVoices(float[] mix, int length) {
+        for (int i = voices.size() - 1; i >= 0; i--) {
+            Voice voice = voices.get(i);
+            voice.render(mix, length);
+            if (voice.isFinished()) {
+                voices.remove(i);
+                voice.endFrame = (ring.getWritePosition() + 1) * chunkFrames;
+                Tracing.endAsync(Tracing.NOTE_SYNTHESIZED, voice.getCookie());
+                Tracing.beginAsync(Tracing.NOTE_WRITTEN, voice.getCookie());
+                synthesized.add(voice);
+            }
+        }
+    }
+
+    /**
+     * Drains the ring buffer into the output, which paces the whole engine.
+     * The output is paused while the synthesis is idle.
+     */
+    private void audioLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        ArrayList<Voice> written = new ArrayList<>(); //voices waiting for the playback head
+        long framesWritten = 0;
+        boolean paused = false;
+
+        sink.start();
+        while (running) {
+            boolean pause;
+            try {
+                synchronized (lock) {
+                    while (running && ring.availableToRead() == 0 && (paused || !idle)) lock.wait();
+                    pause = ring.availableToRead() == 0;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (!running) break;
+            if (pause) {
+                sink.pause();
+                paused = true;
+                continue;
+            }
+            if (paused) {
+                sink.start();
+                paused = false;
+            }
+
+            long startNs = System.nanoTime();
+            Tracing.begin(Tracing.OUTPUT_WRITE);
+            int result = sink.write(ring.getReadChunk());
+            Tracing.end();
+            Metrics.WRITE_US.add(Metrics.microsSince(startNs));
+            ring.commitRead();
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+            if (result < 0) {
+                Log.e(TAG, "audioLoop: couldn't write to the output (" + result + ")");
+                break;
+            }
+            framesWritten += chunkFrames;
+
+            trackVoices(framesWritten, written);
+            Metrics.UNDERRUNS.max(sink.getUnderrunCount());
+        }
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        sink.close();
+    }
+
+    /**
+     * Moves the voices along the written and played stages of their trace,
+     * according to what was written and what the output played.
+     * @param framesWritten
+     * @param written
+     */
+    private void trackVoices(long framesWritten, ArrayList<Voice> written) {
+        Voice voice;
+        while ((voice = synthesized.peek()) != null && voice.endFrame <= framesWritten) {
+            synthesized.poll();
+            Tracing.endAsync(Tracing.NOTE_WRITTEN, voice.getCookie());
+            Tracing.beginAsync(Tracing.NOTE_PLAYED, voice.getCookie());
+            written.add(voice);
+        }
+        if (written.isEmpty()) return;
+        long played = sink.getPlayedFrames();
+        for (int i = written.size() - 1; i >= 0; i--) {
+            if (written.get(i).endFrame <= played) {
+                Tracing.endAsync(Tracing.NOTE_PLAYED, written.remove(i).getCookie());
+                Metrics.VOICES_PLAYED.increment();
+            }
+        }
+    }
+
+    /**
+     * Rounds up a number of frames to a whole number of native bursts.
+     * @param frames
+     * @return
+     */
+    private int roundUpToBursts(int frames) {
+        return (frames + burstFrames - 1) / burstFrames * burstFrames;
+    }
+
+    /**
+     * Reads an integer property of the AudioManager.
+     * @param value
+     * @return the value, or -1 if it isn't available
+     */
+    private static int parseProperty(String value) {
+        if (value == null) return -1;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+/**
+ * Where the audio engine sends its chunks: the audio track of the device, or another
+ * output (a file, nothing at all, etc.) so that the engine can run without a device.
+ * A sink is only used by the audio thread of the engine, after being opened.
+ */
+public interface AudioSink {
+    /**
+     * Prepares the output.
+     * @param sampleRate
+     * @param format the storage of the chunks that will be written
+     * @param chunkFrames number of samples of each chunk
+     * @return false if the output doesn't support this configuration
+     */
+    boolean open(int sampleRate, PcmChunk.Formats format, int chunkFrames);
+
+    /**
+     * Starts playing what is written, or resumes it after pause().
+     */
+    void start();
+
+    /**
+     * Stops playing until start() is called again, keeping the output open.
+     * Nothing is written in the meantime.
+     */
+    void pause();
+
+    /**
+     * Writes a whole chunk, blocking if the output is full.
+     * @param chunk
+     * @return the number of frames written, or a negative error code
+     */
+    int write(PcmChunk chunk);
+
+    /**
+     * Number of frames that went out of the output since it started.
+     * @return
+     */
+    long getPlayedFrames();
+
+    /**
+     * Number of times the output had nothing to play since it started.
+     * @return
+     */
+    int getUnderrunCount();
+
+    /**
+     * Stops the output and frees its resources.
+     */
+    void close();
+}
@@ -0,0 +1,109 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Plays the chunks through a streaming AudioTrack.
+ */
+public class AudioTrackSink implements AudioSink {
+    public static final String TAG = "AudioTrackSink";
+
+    private AudioTrack audioTrack;
+
+    @Override
+    public boolean open(int sampleRate, PcmChunk.Formats format, int chunkFrames) {
+        try {
+            // at least two chunks, and whole chunks
+            int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO, format.encoding);
+            int bufferFrames = Math.max(minBufferSize / format.bytesPerSample, 2 * chunkFrames);
+            bufferFrames = (bufferFrames + chunkFrames - 1) / chunkFrames * chunkFrames;
+
+            AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .build();
+
+            AudioFormat audioFormat = new AudioFormat.Builder()
+                    .setSampleRate(sampleRate)
+                    .setEncoding(format.encoding)
+                    .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                    .build();
+
+            AudioTrack track = new AudioTrack(audioAttributes,
+                    audioFormat,
+                    bufferFrames * format.bytesPerSample,
+                    AudioTrack.MODE_STREAM,
+                    0);
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                track.release();
+                return false;
+            }
+            audioTrack = track;
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "open: couldn't create the audio track at " + sampleRate + "Hz with " + format, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void start() {
+        audioTrack.play();
+    }
+
+    @Override
+    public void pause() {
+        audioTrack.pause();
+    }
+
+    @Override
+    public int write(PcmChunk chunk) {
+        return chunk.writeTo(audioTrack);
+    }
+
+    @Override
+    public long getPlayedFrames() {
+        // the head position is an unsigned 32 bit frame count
+        return audioTrack.getPlaybackHeadPosition() & 0xffffffffL;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return 0;
+        return audioTrack.getUnderrunCount();
+    }
+
+    @Override
+    public void close() {
+        audioTrack.stop();
+        audioTrack.release();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+/**
+ * Drops the chunks, only counting them. Without pacing, the engine then runs as fast as
+ * it can, which measures its throughput. With pacing, it behaves like a device playing
+ * in real time, to test the whole pipeline without one.
+ */
+public class NullSink implements AudioSink {
+    private final boolean realTime;
+    private int sampleRate;
+    private long startNs;
+    private volatile long framesWritten = 0;
+
+    /**
+     * @param realTime true to block writes like a device would, false to never block
+     */
+    public NullSink(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    @Override
+    public boolean open(int sampleRate, PcmChunk.Formats format, int chunkFrames) {
+        this.sampleRate = sampleRate;
+        return true;
+    }
+
+    @Override
+    public void start() {
+        // as if what was written so far had just been played
+        startNs = System.nanoTime() - framesWritten * 1_000_000_000L / sampleRate;
+    }
+
+    @Override
+    public void pause() {
+    }
+
+    @Override
+    public int write(PcmChunk chunk) {
+        if (realTime) {
+            // wait until the previous chunks would have been played
+            long dueNs = startNs + framesWritten * 1_000_000_000L / sampleRate;
+            long waitNs = dueNs - System.nanoTime();
+            if (waitNs > 0) {
+                try {
+                    Thread.sleep(waitNs / 1_000_000, (int) (waitNs % 1_000_000));
+                } catch (InterruptedException e) {
+                    return -1;
+                }
+            }
+        }
+        framesWritten += chunk.getFrames();
+        return chunk.getFrames();
+    }
+
+    @Override
+    public long getPlayedFrames() {
+        return framesWritten;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+    }
+}
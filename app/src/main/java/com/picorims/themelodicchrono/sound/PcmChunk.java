@@ -0,0 +1,205 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A chunk of mono samples stored in the format the audio track expects.
+ * The synthesis thread mixes the voices and writes the samples straight into it,
+ * and the very same storage is then given to the track, without any packing or copy.
+ */
+public abstract class PcmChunk {
+    public enum Formats {
+        FLOAT_ARRAY(AudioFormat.ENCODING_PCM_FLOAT, 4),   // mixed in place, no conversion at all
+        SHORT_ARRAY(AudioFormat.ENCODING_PCM_16BIT, 2),
+        DIRECT_BUFFER(AudioFormat.ENCODING_PCM_16BIT, 2); // direct ByteBuffer in native order
+
+        public final int encoding;
+        public final int bytesPerSample;
+
+        Formats(int encoding, int bytesPerSample) {
+            this.encoding = encoding;
+            this.bytesPerSample = bytesPerSample;
+        }
+    }
+
+    protected final int frames;
+
+    protected PcmChunk(int frames) {
+        this.frames = frames;
+    }
+
+    /**
+     * Creates a chunk using the given storage.
+     * @param format
+     * @param frames number of samples in the chunk
+     * @return
+     */
+    public static PcmChunk create(Formats format, int frames) {
+        switch (format) {
+            case FLOAT_ARRAY: return new FloatArrayChunk(frames);
+            case SHORT_ARRAY: return new ShortArrayChunk(frames);
+            default: return new DirectBufferChunk(frames);
+        }
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gives the zeroed array in which the voices must be mixed.
+     * @return
+     */
+    public abstract float[] clearMix();
+
+    /**
+     * Turns the mix into the samples of the chunk, applying the volume and clipping to [-1;1].
+     * @param volume
+     */
+    public abstract void finish(float volume);
+
+    /**
+     * Writes the whole chunk to the track, blocking until it is done.
+     * @param track a track created with the encoding of the format of the chunk
+     * @return the number of frames written, or a negative error code of the track
+     */
+    public abstract int writeTo(AudioTrack track);
+
+    /**
+     * A sample of the finished chunk, for outputs other than an AudioTrack.
+     * @param index
+     * @return the sample in [-1;1]
+     */
+    public abstract float getSample(int index);
+
+    protected static float clip(float sample) {
+        if (sample > 1) return 1;
+        if (sample < -1) return -1;
+        return sample;
+    }
+
+    private static class FloatArrayChunk extends PcmChunk {
+        private final float[] samples;
+
+        private FloatArrayChunk(int frames) {
+            super(frames);
+            samples = new float[frames];
+        }
+
+        @Override
+        public float[] clearMix() {
+            for (int i = 0; i < frames; i++) samples[i] = 0;
+            return samples;
+        }
+
+        @Override
+        public void finish(float volume) {
+            for (int i = 0; i < frames; i++) samples[i] = clip(samples[i] * volume);
+        }
+
+        @Override
+        public int writeTo(AudioTrack track) {
+            return track.write(samples, 0, frames, AudioTrack.WRITE_BLOCKING);
+        }
+
+        @Override
+        public float getSample(int index) {
+            return samples[index];
+        }
+    }
+
+    private static class ShortArrayChunk extends PcmChunk {
+        private final float[] mix;
+        private final short[] samples;
+
+        private ShortArrayChunk(int frames) {
+            super(frames);
+            mix = new float[frames];
+            samples = new short[frames];
+        }
+
+        @Override
+        public float[] clearMix() {
+            for (int i = 0; i < frames; i++) mix[i] = 0;
+            return mix;
+        }
+
+        @Override
+        public void finish(float volume) {
+            for (int i = 0; i < frames; i++) samples[i] = (short) (clip(mix[i] * volume) * 32767);
+        }
+
+        @Override
+        public int writeTo(AudioTrack track) {
+            return track.write(samples, 0, frames);
+        }
+
+        @Override
+        public float getSample(int index) {
+            return samples[index] / 32767f;
+        }
+    }
+
+    private static class DirectBufferChunk extends PcmChunk {
+        private final float[] mix;
+        private final ByteBuffer buffer;
+
+        private DirectBufferChunk(int frames) {
+            super(frames);
+            mix = new float[frames];
+            buffer = ByteBuffer.allocateDirect(frames * 2).order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        public float[] clearMix() {
+            for (int i = 0; i < frames; i++) mix[i] = 0;
+            return mix;
+        }
+
+        @Override
+        public void finish(float volume) {
+            for (int i = 0; i < frames; i++) buffer.putShort(i * 2, (short) (clip(mix[i] * volume) * 32767));
+        }
+
+        @Override
+        public int writeTo(AudioTrack track) {
+            // the samples are put at absolute positions, the track reads from the position
+            buffer.clear();
+            int written = track.write(buffer, buffer.remaining(), AudioTrack.WRITE_BLOCKING);
+            return (written < 0)? written : written / 2;
+        }
+
+        @Override
+        public float getSample(int index) {
+            return buffer.getShort(index * 2) / 32767f;
+        }
+    }
+}
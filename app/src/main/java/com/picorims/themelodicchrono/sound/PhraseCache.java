@@ -0,0 +1,218 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.sound;
+
+import com.picorims.themelodicchrono.models.DelayedNote;
+import com.picorims.themelodicchrono.models.Phrase;
+import com.picorims.themelodicchrono.models.Pitch;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sound of the phrases already played, rendered with the delays of their notes
+ * at sample precision. Commands give the same Phrase for the same cursor position,
+ * and equal phrases share their sound, so a phrase is only synthesized the first time
+ * it plays (or during the warm-up of the rules). Voices ask for it without rendering it
+ * themselves (see getOrRenderLater()), so synthesis never waits for a render.
+ * The least recently used phrases are dropped when the cache is full.
+ */
+public class PhraseCache {
+    private static final int DEFAULT_MAX_SAMPLES = 4 * 1024 * 1024; // 16MB of floats
+    private static final int HEAP_FRACTION = 4; // the cache never takes more than a quarter of the heap
+
+    // in access order, so the first entries are the least recently used
+    private static final LinkedHashMap<Phrase, Rendered> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static int cachedSamples = 0;
+    private static int maxSamples = (int) Math.min(DEFAULT_MAX_SAMPLES, heapLimit());
+    private static final HashSet<Phrase> PENDING = new HashSet<>(); //being rendered, guarded by CACHE
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "PhraseCache-render");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static class Rendered {
+        final double duration;
+        final int sampleRate;
+        final float[] samples;
+
+        Rendered(double duration, int sampleRate, float[] samples) {
+            this.duration = duration;
+            this.sampleRate = sampleRate;
+            this.samples = samples;
+        }
+    }
+
+    /**
+     * Gives the samples of the phrase, rendering them if they are not cached yet.
+     * The returned array must not be modified.
+     * @param phrase
+     * @param duration duration of each note in seconds
+     * @param sampleRate
+     * @return the samples, in [-1;1] for each note
+     */
+    public static float[] get(Phrase phrase, double duration, int sampleRate) {
+        synchronized (CACHE) {
+            float[] samples = lookUp(phrase, duration, sampleRate);
+            if (samples != null) return samples;
+        }
+        // render outside of the lock, it can take a while
+        float[] samples = render(phrase, duration, sampleRate);
+        synchronized (CACHE) {
+            Rendered previous = CACHE.put(phrase, new Rendered(duration, sampleRate, samples));
+            if (previous != null) cachedSamples -= previous.samples.length;
+            cachedSamples += samples.length;
+
+            Iterator<Rendered> leastRecentlyUsed = CACHE.values().iterator();
+            while (cachedSamples > maxSamples && CACHE.size() > 1) {
+                cachedSamples -= leastRecentlyUsed.next().samples.length;
+                leastRecentlyUsed.remove();
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Gives the samples of the phrase if they are cached, or else starts rendering them
+     * on a background thread and returns null. The phrase can then be played from its notes,
+     * and the next fires of the phrase will find it in the cache.
+     * @param phrase
+     * @param duration duration of each note in seconds
+     * @param sampleRate
+     * @return the samples (see get()), or null if they are not rendered yet
+     */
+    public static float[] getOrRenderLater(Phrase phrase, double duration, int sampleRate) {
+        synchronized (CACHE) {
+            float[] samples = lookUp(phrase, duration, sampleRate);
+            if (samples != null || !PENDING.add(phrase)) return samples;
+        }
+        RENDERER.execute(() -> {
+            try {
+                get(phrase, duration, sampleRate);
+            } finally {
+                synchronized (CACHE) {
+                    PENDING.remove(phrase);
+                }
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Cached samples of the phrase, marked as recently used. Must be called holding the CACHE lock.
+     * @param phrase
+     * @param duration
+     * @param sampleRate
+     * @return the samples, or null if they are not cached for this duration and rate
+     */
+    private static float[] lookUp(Phrase phrase, double duration, int sampleRate) {
+        Rendered rendered = CACHE.get(phrase);
+        if (rendered != null && rendered.duration == duration && rendered.sampleRate == sampleRate) {
+            return rendered.samples;
+        }
+        return null;
+    }
+
+    /**
+     * Sizes the cache so that it can keep the given number of samples
+     * (within a part of the heap of the app), or goes back to the default size if less is needed.
+     * @param samples
+     */
+    public static void reserve(long samples) {
+        synchronized (CACHE) {
+            maxSamples = (int) Math.min(Math.max(DEFAULT_MAX_SAMPLES, samples), heapLimit());
+        }
+    }
+
+    /**
+     * Most samples the cache may keep, according to the heap the device gives to the app.
+     * @return
+     */
+    private static long heapLimit() {
+        long samples = Runtime.getRuntime().maxMemory() / HEAP_FRACTION / 4; // 4 bytes per float
+        return Math.min(samples, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Number of samples the cache keeps before dropping the least recently used phrases.
+     * @return
+     */
+    public static int getMaxSamples() {
+        synchronized (CACHE) {
+            return maxSamples;
+        }
+    }
+
+    /**
+     * Number of samples of the phrase once rendered.
+     * @param phrase
+     * @param duration duration of each note in seconds
+     * @param sampleRate
+     * @return
+     */
+    public static int renderedLength(Phrase phrase, double duration, int sampleRate) {
+        long lastDelay = 0;
+        for (DelayedNote note : phrase.getNotes()) lastDelay = Math.max(lastDelay, note.delayMs);
+        return delayToSamples(lastDelay, sampleRate) + (int) Math.ceil(duration * sampleRate);
+    }
+
+    /**
+     * Forgets all rendered phrases.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+            cachedSamples = 0;
+        }
+    }
+
+    /**
+     * Synthesizes all notes of the phrase into a single buffer, each one
+     * starting at the sample matching its delay.
+     * @param phrase
+     * @param duration
+     * @param sampleRate
+     * @return
+     */
+    private static float[] render(Phrase phrase, double duration, int sampleRate) {
+        int noteSamples = (int) Math.ceil(duration * sampleRate);
+        float[] samples = new float[renderedLength(phrase, duration, sampleRate)];
+
+        for (DelayedNote note : phrase.getNotes()) {
+            SineVoice voice = new SineVoice(Pitch.toHz(note.pitch), duration, sampleRate, 0);
+            voice.render(samples, delayToSamples(note.delayMs, sampleRate), noteSamples);
+        }
+        return samples;
+    }
+
+    static int delayToSamples(long delayMs, int sampleRate) {
+        return (int) Math.round(delayMs * sampleRate / 1000.0);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.sound;
+
+import com.picorims.themelodicchrono.models.DelayedNote;
+import com.picorims.themelodicchrono.models.Phrase;
+import com.picorims.themelodicchrono.models.Pitch;
+
+import java.util.List;
+
+/**
+ * Plays a whole phrase from its rendered samples, taken from the PhraseCache.
+ * If the phrase is not rendered yet, its notes are synthesized as they play
+ * while the cache renders it in the background for its next fires.
+ */
+public class PhraseVoice extends Voice {
+    private final float[] samples; //null when the notes are synthesized as they play
+    private final SineVoice[] notes;
+    private final int[] noteStarts; //sample at which each note starts
+    private final int length;
+    private int position = 0;
+
+    /**
+     * Must be called outside of the synthesis thread, as a phrase that is not
+     * cached yet prepares a voice for each of its notes.
+     * @param phrase
+     * @param duration duration of each note in seconds
+     * @param sampleRate
+     * @param cookie identifier of the note in async trace sections
+     */
+    public PhraseVoice(Phrase phrase, double duration, int sampleRate, int cookie) {
+        super(cookie);
+        samples = PhraseCache.getOrRenderLater(phrase, duration, sampleRate);
+        if (samples != null) {
+            notes = null;
+            noteStarts = null;
+            length = samples.length;
+            return;
+        }
+
+        List<DelayedNote> phraseNotes = phrase.getNotes();
+        notes = new SineVoice[phraseNotes.size()];
+        noteStarts = new int[notes.length];
+        int end = 0;
+        for (int i = 0; i < notes.length; i++) {
+            DelayedNote note = phraseNotes.get(i);
+            notes[i] = new SineVoice(Pitch.toHz(note.pitch), duration, sampleRate, 0);
+            noteStarts[i] = PhraseCache.delayToSamples(note.delayMs, sampleRate);
+            end = Math.max(end, noteStarts[i] + notes[i].getNumSamples());
+        }
+        length = end;
+    }
+
+    @Override
+    public void render(float[] mix, int length) {
+        int end = Math.min(this.length, position + length);
+        if (samples != null) {
+            for (int i = position; i < end; i++) {
+                mix[i - position] += samples[i];
+            }
+        } else {
+            for (int i = 0; i < notes.length; i++) {
+                int offset = Math.max(0, noteStarts[i] - position);
+                if (position + offset < end) notes[i].render(mix, offset, end - position - offset);
+            }
+        }
+        position = end;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return position >= length;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+/**
+ * Cheap linear interpolation resampler, used when the audio track doesn't accept the rate
+ * of synthesis. It pulls blocks of samples at the input rate from its source as needed,
+ * and keeps its position between calls so that consecutive outputs join seamlessly.
+ */
+public class Resampler {
+    /**
+     * Gives the next samples at the input rate.
+     */
+    public interface Source {
+        /**
+         * Adds the next samples to the given zeroed array.
+         * @param mix
+         * @param length
+         */
+        void render(float[] mix, int length);
+    }
+
+    private final Source source;
+    private final double step; //input samples per output sample
+    private final float[] input;
+    private int inputLength = 0;
+    private double position = 0; //in the input block, -1 being the last sample of the previous block
+    private float previous = 0; //last sample of the previous block
+
+    /**
+     * @param source
+     * @param inputRate the rate of the source
+     * @param outputRate the rate to produce
+     * @param blockFrames number of samples asked to the source at a time
+     */
+    public Resampler(Source source, int inputRate, int outputRate, int blockFrames) {
+        this.source = source;
+        this.step = (double) inputRate / outputRate;
+        this.input = new float[blockFrames];
+    }
+
+    /**
+     * Writes the next samples at the output rate.
+     * @param output
+     * @param length
+     */
+    public void resample(float[] output, int length) {
+        for (int i = 0; i < length; i++) {
+            int index = (int) Math.floor(position);
+            while (index + 1 >= inputLength) {
+                nextBlock();
+                index = (int) Math.floor(position);
+            }
+            float a = (index < 0)? previous : input[index];
+            float b = input[index + 1];
+            output[i] = a + (b - a) * (float) (position - index);
+            position += step;
+        }
+    }
+
+    private void nextBlock() {
+        if (inputLength > 0) previous = input[inputLength - 1];
+        position -= inputLength;
+        for (int i = 0; i < input.length; i++) input[i] = 0;
+        source.render(input, input.length);
+        inputLength = input.length;
+    }
+}
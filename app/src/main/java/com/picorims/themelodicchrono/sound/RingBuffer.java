@@ -0,0 +1,108 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+/**
+ * Fixed size circular buffer of PCM chunks, shared by exactly one writer thread
+ * and one reader thread. The writer fills the next free chunk in place and commits it,
+ * and the reader uses the chunk in place before releasing it, so samples are never copied.
+ * It never allocates after its creation, and positions only grow, so they can also be
+ * used to know when a given chunk went through.
+ */
+public class RingBuffer {
+    private final PcmChunk[] chunks;
+    private volatile long writePosition = 0;
+    private volatile long readPosition = 0;
+
+    /**
+     * @param capacity number of chunks the buffer can hold
+     * @param format storage of the chunks
+     * @param chunkFrames number of samples in each chunk
+     */
+    public RingBuffer(int capacity, PcmChunk.Formats format, int chunkFrames) {
+        chunks = new PcmChunk[capacity];
+        for (int i = 0; i < capacity; i++) chunks[i] = PcmChunk.create(format, chunkFrames);
+    }
+
+    public int getCapacity() {
+        return chunks.length;
+    }
+
+    /**
+     * Number of chunks written since the creation of the buffer.
+     * @return
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Number of chunks read since the creation of the buffer.
+     * @return
+     */
+    public long getReadPosition() {
+        return readPosition;
+    }
+
+    public int availableToRead() {
+        return (int) (writePosition - readPosition);
+    }
+
+    public int availableToWrite() {
+        return chunks.length - availableToRead();
+    }
+
+    /**
+     * The next chunk to fill. Must only be called from the writer thread,
+     * when availableToWrite() is positive.
+     * @return
+     */
+    public PcmChunk getWriteChunk() {
+        return chunks[(int) (writePosition % chunks.length)];
+    }
+
+    /**
+     * Makes the chunk given by getWriteChunk() available to the reader.
+     */
+    public void commitWrite() {
+        writePosition++;
+    }
+
+    /**
+     * The next chunk to read. Must only be called from the reader thread,
+     * when availableToRead() is positive.
+     * @return
+     */
+    public PcmChunk getReadChunk() {
+        return chunks[(int) (readPosition % chunks.length)];
+    }
+
+    /**
+     * Gives back the chunk given by getReadChunk() to the writer.
+     */
+    public void commitRead() {
+        readPosition++;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.sound;
+
+/**
+ * A sine tone being played, synthesized chunk by chunk. It only keeps its position,
+ * so its memory does not depend on its duration.
+ */
+public class SineVoice extends Voice {
+    private final double freqOfTone;
+    private final int sampleRate;
+    private final int numSamples;
+    private final int ramp; // Amplitude ramp as a percent of sample count
+    private int position = 0;
+
+    /**
+     * @param freqOfTone
+     * @param duration in seconds
+     * @param sampleRate
+     * @param cookie identifier of the note in async trace sections
+     */
+    public SineVoice(double freqOfTone, double duration, int sampleRate, int cookie) {
+        super(cookie);
+        this.freqOfTone = freqOfTone;
+        this.sampleRate = sampleRate;
+        this.numSamples = (int) Math.ceil(duration * sampleRate);
+        this.ramp = numSamples / 20;
+    }
+
+    /**
+     * Number of samples of the whole tone.
+     * @return
+     */
+    public int getNumSamples() {
+        return numSamples;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return position >= numSamples;
+    }
+
+    @Override
+    public void render(float[] mix, int length) {
+        render(mix, 0, length);
+    }
+
+    /**
+     * Adds the next samples of the tone to the mix, starting at the given offset in the mix.
+     * @param mix
+     * @param offset
+     * @param length number of samples to render
+     */
+    public void render(float[] mix, int offset, int length) {
+        int end = Math.min(numSamples, position + length);
+        int shift = offset - position;
+        for (int i = position; i < end; i++) {
+            double sample = Math.sin(freqOfTone * 2 * Math.PI * i / sampleRate);
+            if (i < ramp) {
+                sample = sample * i / ramp;                             // Ramp amplitude up (to avoid clicks)
+            } else if (i >= numSamples - ramp) {
+                sample = sample * (numSamples - i) / ramp;              // Ramp amplitude down
+            }
+            mix[i + shift] += (float) sample;
+        }
+        position = end;
+    }
+}
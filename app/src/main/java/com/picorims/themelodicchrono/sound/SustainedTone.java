@@ -0,0 +1,168 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * A sine tone held for as long as needed, at almost no CPU cost.
+ * Instead of streaming every sample, a static track holds a short attack followed by
+ * a loop of a whole number of periods, which the system loops by itself with
+ * setLoopPoints(). The buffer is a few thousand samples at most, whatever the duration.
+ *
+ * Loop points can't change while the track plays, so the release is a short volume
+ * ramp applied to the track before stopping it.
+ *
+ * A tone is controlled from the main thread, on which its release is faded out.
+ * Nothing in the app holds notes yet: rules only play notes of a fixed duration.
+ */
+public class SustainedTone {
+    public static final String TAG = "SustainedTone";
+    private static final double ATTACK_SECONDS = 0.02;
+    private static final int RELEASE_STEPS = 10;
+    private static final long RELEASE_STEP_MS = 5;
+    private static final int MIN_LOOP_FRAMES = 64;
+    private static final int MAX_LOOP_CYCLES = 64;
+    private static final double MAX_DETUNE_CENTS = 0.5;
+    private static final float AMPLITUDE = 0.5f;
+
+    private final AudioTrack track;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean released = false; //only used on the main thread
+
+    /**
+     * Prepares the tone, without playing it yet.
+     * @param freqOfTone
+     * @param sampleRate
+     */
+    public SustainedTone(double freqOfTone, int sampleRate) {
+        int[] loop = loopOf(freqOfTone, sampleRate);
+        int cycles = loop[0];
+        int loopFrames = loop[1];
+        int attackFrames = (int) Math.ceil(ATTACK_SECONDS * sampleRate);
+
+        // the attack ends exactly where the loop starts, the loop ends where it starts again
+        short[] samples = new short[attackFrames + loopFrames];
+        for (int i = 0; i < samples.length; i++) {
+            int phaseIndex = i - attackFrames;
+            double sample = Math.sin(2 * Math.PI * cycles * phaseIndex / loopFrames) * AMPLITUDE;
+            if (i < attackFrames) sample = sample * i / attackFrames;
+            samples[i] = (short) (sample * 32767);
+        }
+        track = createTrack(samples, sampleRate, attackFrames);
+    }
+
+    /**
+     * Starts the tone. It plays until release() is called. Must be called on the main thread.
+     */
+    public void start() {
+        if (track != null && !released) track.play();
+    }
+
+    /**
+     * Fades out the tone, then frees the track. The tone can't be started again.
+     * Must be called on the main thread, where the fade out steps are posted.
+     */
+    public void release() {
+        if (released) return;
+        released = true;
+        if (track == null) return;
+        fadeOut(RELEASE_STEPS);
+    }
+
+    private void fadeOut(int stepsLeft) {
+        if (stepsLeft == 0) {
+            track.stop();
+            track.release();
+            return;
+        }
+        track.setVolume((float) (stepsLeft - 1) / RELEASE_STEPS);
+        handler.postDelayed(() -> fadeOut(stepsLeft - 1), RELEASE_STEP_MS);
+    }
+
+    /**
+     * Finds the shortest loop made of whole periods of the tone that is in tune,
+     * as a period is rarely a whole number of samples.
+     * @param freqOfTone
+     * @param sampleRate
+     * @return {number of periods, number of frames}
+     */
+    static int[] loopOf(double freqOfTone, int sampleRate) {
+        double period = sampleRate / freqOfTone;
+        int bestCycles = 1;
+        int bestFrames = Math.max(1, (int) Math.round(period));
+        double bestDetune = Double.MAX_VALUE;
+        for (int cycles = 1; cycles <= MAX_LOOP_CYCLES; cycles++) {
+            double exact = cycles * period;
+            int frames = (int) Math.round(exact);
+            if (frames < MIN_LOOP_FRAMES) continue;
+            double detune = Math.abs(1200 * Math.log(exact / frames) / Math.log(2));
+            if (detune < bestDetune) {
+                bestCycles = cycles;
+                bestFrames = frames;
+                bestDetune = detune;
+            }
+            if (detune <= MAX_DETUNE_CENTS) break;
+        }
+        return new int[]{bestCycles, bestFrames};
+    }
+
+    private static AudioTrack createTrack(short[] samples, int sampleRate, int loopStart) {
+        try {
+            AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_MEDIA)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                    .build();
+
+            AudioFormat audioFormat = new AudioFormat.Builder()
+                    .setSampleRate(sampleRate)
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                    .build();
+
+            AudioTrack track = new AudioTrack(audioAttributes,
+                    audioFormat,
+                    samples.length * 2,
+                    AudioTrack.MODE_STATIC,
+                    0);
+            // static data must be written before setting the loop
+            track.write(samples, 0, samples.length);
+            if (track.getState() != AudioTrack.STATE_INITIALIZED
+                    || track.setLoopPoints(loopStart, samples.length, -1) != AudioTrack.SUCCESS) {
+                track.release();
+                return null;
+            }
+            return track;
+        } catch (Exception e) {
+            Log.e(TAG, "createTrack: couldn't create the static track", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.sound;
+
+/**
+ * Something being played by the audio engine, rendered chunk by chunk.
+ */
+public abstract class Voice {
+    private final int cookie;
+    long endFrame = -1; //position in the output after the last sample, set by the engine
+
+    /**
+     * @param cookie identifier of the note in async trace sections
+     */
+    protected Voice(int cookie) {
+        this.cookie = cookie;
+    }
+
+    public int getCookie() {
+        return cookie;
+    }
+
+    /**
+     * Adds the next samples of the voice to the mix, in [-1;1].
+     * Samples after the end of the voice are left untouched.
+     * @param mix
+     * @param length number of samples to render
+     */
+    public abstract void render(float[] mix, int length);
+
+    public abstract boolean isFinished();
+}
@@ -0,0 +1,121 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+
+package com.picorims.themelodicchrono.sound;
+
+import android.app.Activity;
+import android.util.Log;
+
+import com.picorims.themelodicchrono.models.Phrase;
+import com.picorims.themelodicchrono.models.Rules;
+import com.picorims.themelodicchrono.models.RulesAnalysis;
+
+import java.util.ArrayList;
+
+/**
+ * Prepares a new set of rules in the background before it is used, so that the first
+ * notes after applying them are not late: the phrases they can play are synthesized
+ * into the PhraseCache (as many as it can hold), and the scheduling and mixing code is run once so that it is
+ * already compiled by the JIT.
+ */
+public class WarmUp {
+    public static final String TAG = "WarmUp";
+    private static final long SIMULATED_MS = 10_000; //time of chrono simulated to exercise the rules
+    private static final long SIMULATED_TICK_MS = 1000 / 60;
+
+    /**
+     * Called on the UI thread when the rules are ready to be used.
+     */
+    public interface Listener {
+        void onReady(Rules rules, long warmUpMs);
+    }
+
+    /**
+     * Starts the warm-up of the given rules on a background thread.
+     * The rules must not be used elsewhere until the listener is called.
+     * @param rules
+     * @param duration duration of each note in seconds
+     * @param activity activity on which UI thread the listener is called
+     * @param listener
+     */
+    public static void start(Rules rules, double duration, Activity activity, Listener listener) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long startNs = System.nanoTime();
+                warmUp(rules, duration, activity);
+                long warmUpMs = (System.nanoTime() - startNs) / 1_000_000;
+                Log.i(TAG, "rules ready after " + warmUpMs + "ms");
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onReady(rules, warmUpMs);
+                    }
+                });
+            }
+        }, "WarmUp");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private static void warmUp(Rules rules, double duration, Activity activity) {
+        // start the audio track now rather than on the first note
+        AudioEngine engine = AudioEngine.getInstance(activity);
+
+        // size the pools for the worst case of the rules before they play
+        RulesAnalysis analysis = rules.getAnalysis();
+        engine.reserveVoices(analysis.getPeakVoices());
+        PhraseCache.reserve(analysis.estimateCacheSamples(engine.getSampleRate()));
+
+        // keep what the cache can hold, starting with the phrases the commands play first
+        int sampleRate = engine.getSampleRate();
+        ArrayList<Phrase> phrases = rules.getAllPhrases();
+        long room = PhraseCache.getMaxSamples();
+        int warmed = 0;
+        while (warmed < phrases.size()) {
+            room -= PhraseCache.renderedLength(phrases.get(warmed), duration, sampleRate);
+            if (room < 0) break;
+            warmed++;
+        }
+
+        // synthesize them from the last to play to the first, so that the cache drops
+        // the later ones first, and mix each of them once
+        float[] mix = new float[engine.getChunkFrames()];
+        for (int i = warmed - 1; i >= 0; i--) {
+            Phrase phrase = phrases.get(i);
+            PhraseCache.get(phrase, duration, sampleRate);
+            new PhraseVoice(phrase, duration, sampleRate, 0).render(mix, mix.length);
+        }
+
+        // run the scheduling like the chrono would, then forget about it
+        rules.setMetricsEnabled(false);
+        for (long t = 0; t < SIMULATED_MS; t += SIMULATED_TICK_MS) {
+            rules.getPhrasesToPlay(t, t + SIMULATED_TICK_MS);
+        }
+        rules.reset();
+        rules.setMetricsEnabled(true);
+        Log.d(TAG, "warmUp: " + warmed + "/" + phrases.size() + " phrases");
+    }
+}
@@ -0,0 +1,151 @@
+/*
+MIT License
+
+Copyright (c) 2022 Picorims
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+SOFTWARE.
+*/
+
+package com.picorims.themelodicchrono.sound;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Records the chunks into a 16 bit mono WAV file, as fast as they come.
+ */
+public class WavFileSink implements AudioSink {
+    public static final String TAG = "WavFileSink";
+    private static final int HEADER_SIZE = 44;
+
+    private final File file;
+    private OutputStream out;
+    private byte[] bytes;
+    private int sampleRate;
+    private volatile long framesWritten = 0;
+
+    public WavFileSink(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public boolean open(int sampleRate, PcmChunk.Formats format, int chunkFrames) {
+        try {
+            this.sampleRate = sampleRate;
+            bytes = new byte[chunkFrames * 2];
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            // the sizes are written when closing
+            out.write(header(0));
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "open: couldn't open " + file, e);
+            return false;
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void pause() {
+    }
+
+    @Override
+    public int write(PcmChunk chunk) {
+        int frames = chunk.getFrames();
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (chunk.getSample(i) * 32767);
+            bytes[2 * i] = (byte) (sample & 0xff);
+            bytes[2 * i + 1] = (byte) ((sample >> 8) & 0xff);
+        }
+        try {
+            out.write(bytes, 0, frames * 2);
+        } catch (IOException e) {
+            Log.e(TAG, "write: couldn't write to " + file, e);
+            return -1;
+        }
+        framesWritten += frames;
+        return frames;
+    }
+
+    @Override
+    public long getPlayedFrames() {
+        return framesWritten;
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.write(header(framesWritten * 2));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "close: couldn't finish " + file, e);
+        }
+    }
+
+    /**
+     * The RIFF header of a 16 bit mono PCM file.
+     * @param dataSize number of bytes of samples
+     * @return
+     */
+    private byte[] header(long dataSize) {
+        byte[] header = new byte[HEADER_SIZE];
+        writeAscii(header, 0, "RIFF");
+        writeInt(header, 4, (int) (36 + dataSize));
+        writeAscii(header, 8, "WAVE");
+        writeAscii(header, 12, "fmt ");
+        writeInt(header, 16, 16);             // size of the format chunk
+        writeShort(header, 20, 1);            // PCM
+        writeShort(header, 22, 1);            // mono
+        writeInt(header, 24, sampleRate);
+        writeInt(header, 28, sampleRate * 2); // bytes per second
+        writeShort(header, 32, 2);            // bytes per frame
+        writeShort(header, 34, 16);           // bits per sample
+        writeAscii(header, 36, "data");
+        writeInt(header, 40, (int) dataSize);
+        return header;
+    }
+
+    private static void writeAscii(byte[] dst, int offset, String s) {
+        for (int i = 0; i < s.length(); i++) dst[offset + i] = (byte) s.charAt(i);
+    }
+
+    private static void writeInt(byte[] dst, int offset, int value) {
+        for (int i = 0; i < 4; i++) dst[offset + i] = (byte) ((value >> (8 * i)) & 0xff);
+    }
+
+    private static void writeShort(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value & 0xff);
+        dst[offset + 1] = (byte) ((value >> 8) & 0xff);
+    }
+}
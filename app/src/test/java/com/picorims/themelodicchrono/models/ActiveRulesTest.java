@@ -0,0 +1,98 @@
+package com.picorims.themelodicchrono.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks the hand over of rule sets to the chrono loop: cursor migration at the swap point,
+ * and a loop that keeps playing while another thread publishes rules as fast as it can.
+ */
+public class ActiveRulesTest {
+    private static final long NOTES_DELAY_MS = 250;
+    private static final long FRAME_MS = 1000 / 60;
+
+    @Test
+    public void swapKeepsCursorsOfUnchangedCommands() {
+        ActiveRules activeRules = new ActiveRules();
+        activeRules.publish(new Rules("every 1s play C,D,E scale", NOTES_DELAY_MS));
+        Rules rules = activeRules.acquire(0);
+        assertEquals("C4", firstNote(rules.getNotesToPlay(0, 1000)));
+        assertEquals("D4", firstNote(rules.getNotesToPlay(1000, 2000)));
+
+        //same command plus a new one: the scale continues, the new command starts from the range
+        activeRules.publish(new Rules("every 1s play C,D,E scale\nat 3s play G", NOTES_DELAY_MS));
+        Rules swapped = activeRules.acquire(2000);
+        ArrayList<DelayedNote> notes = swapped.getNotesToPlay(2000, 3000);
+        assertEquals(1, notes.size());
+        assertEquals("E4", firstNote(notes));
+        notes = swapped.getNotesToPlay(3000, 4000);
+        assertEquals(2, notes.size());
+
+        //a reset applies to the rules in use
+        activeRules.requestReset();
+        assertSame(swapped, activeRules.acquire(0));
+        assertEquals("C4", firstNote(swapped.getNotesToPlay(0, 1000)));
+
+        activeRules.publish(null);
+        assertNull(activeRules.acquire(1000));
+    }
+
+    @Test
+    public void loopPlaysWhilePublishing() throws InterruptedException {
+        String[] variants = {
+                "every 1ds play C,E,G arpeggio",
+                "every 1ds play C,E,G arpeggio\nevery 1s play A repeat 3",
+                "every 2ds play B scale\nat 10s play C",
+        };
+        ActiveRules activeRules = new ActiveRules();
+        activeRules.publish(new Rules(variants[0], NOTES_DELAY_MS));
+        Rules previous = activeRules.acquire(0);
+        AtomicBoolean done = new AtomicBoolean(false);
+        CountDownLatch published = new CountDownLatch(1);
+        Thread publisher = new Thread(() -> {
+            int i = 1;
+            while (!done.get()) {
+                activeRules.publish(new Rules(variants[i++ % variants.length], NOTES_DELAY_MS));
+                published.countDown();
+            }
+        });
+        publisher.start();
+        //the loop starts with rules waiting for it, so it swaps at least once
+        published.await();
+
+        long time = 0;
+        int played = 0;
+        int swaps = 0;
+        AtomicReference<Throwable> failure = new AtomicReference<>(null);
+        try {
+            for (int tick = 0; tick < 50_000; tick++) {
+                Rules rules = activeRules.acquire(time);
+                if (rules != previous) swaps++;
+                previous = rules;
+                played += rules.getNotesToPlay(time, time + FRAME_MS).size();
+                time += FRAME_MS;
+            }
+        } catch (Throwable t) {
+            failure.set(t);
+        }
+        done.set(true);
+        publisher.join();
+        assertNull(failure.get());
+        assertTrue(swaps > 0);
+        //every variant plays at least once per 2ds
+        assertTrue(played >= time / 200);
+    }
+
+    private static String firstNote(ArrayList<DelayedNote> notes) {
+        return Pitch.toName(notes.get(0).pitch);
+    }
+}
@@ -0,0 +1,78 @@
+package com.picorims.themelodicchrono.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks the text of the chrono display, and that the steady-state loop call
+ * (chrono, rules with nothing due, display) does not allocate anything.
+ */
+public class ChronoDisplayTest {
+    private static final long FRAME_MS = 1000 / 60;
+    private static final int WARM_UP_TICKS = 200_000;
+    private static final int MEASURED_TICKS = 200_000;
+
+    @Test
+    public void formatsTime() {
+        ChronoDisplay display = new ChronoDisplay();
+        assertTrue(display.update(0));
+        assertEquals("00:00:00.0", text(display));
+        assertTrue(display.update(((1 * 60 + 2) * 60 + 3) * 1000 + 450));
+        assertEquals("01:02:03.4", text(display));
+        assertTrue(display.update(123L * 3600 * 1000 + 59 * 60_000 + 59_999));
+        assertEquals("123:59:59.9", text(display));
+    }
+
+    @Test
+    public void updatesOnlyOnVisibleChange() {
+        ChronoDisplay display = new ChronoDisplay();
+        assertTrue(display.update(0));
+        assertFalse(display.update(16));
+        assertFalse(display.update(99));
+        assertTrue(display.update(100));
+        display.reset();
+        assertTrue(display.update(100));
+    }
+
+    @Test
+    public void steadyStateTickDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        Chrono chrono = new Chrono();
+        ChronoDisplay display = new ChronoDisplay();
+        ActiveRules activeRules = new ActiveRules();
+        //nothing due during the test, which lasts less than two hours of chrono time
+        activeRules.publish(new Rules("every 2h play C,E,G arpeggio\nat 3h play C\nevery 4h play A scale", 250));
+
+        long[] unixNow = {0};
+        int[] changes = {0};
+        Runnable tick = () -> {
+            unixNow[0] += FRAME_MS;
+            chrono.tick(unixNow[0]);
+            Rules rules = activeRules.acquire(chrono.getEllapsedThen());
+            changes[0] += rules.getPhrasesToPlay(chrono.getEllapsedThen(), chrono.getEllapsed()).size();
+            if (display.update(chrono.getEllapsed())) changes[0]++;
+        };
+        for (int i = 0; i < WARM_UP_TICKS; i++) tick.run();
+
+        // the measure itself may allocate, so it is done once without ticks as a reference
+        long before = threads.getThreadAllocatedBytes(threadId);
+        long reference = threads.getThreadAllocatedBytes(threadId) - before;
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_TICKS; i++) tick.run();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - reference;
+
+        assertTrue(changes[0] > 0);
+        assertEquals("bytes allocated by " + MEASURED_TICKS + " ticks", 0, allocated);
+    }
+
+    private static String text(ChronoDisplay display) {
+        return new String(display.getChars(), 0, display.getLength());
+    }
+}
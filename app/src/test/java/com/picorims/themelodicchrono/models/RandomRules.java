@@ -0,0 +1,135 @@
+package com.picorims.themelodicchrono.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random but valid rule sets, keeping what each command means
+ * so that tests can compute on their own what should be played.
+ */
+class RandomRules {
+    private static final String[][] NOTE_LISTS = {
+            {"C"}, {"D#"}, {"Eb"}, {"F"}, {"G"}, {"A"}, {"Bb"},
+            {"C", "E", "G"}, {"A", "C", "E"}, {"F#", "A", "C#", "E"}
+    };
+
+    /**
+     * What a generated command line is supposed to do.
+     */
+    static class Spec {
+        boolean at;
+        long timestamp;
+        String[] notes;
+        Command.PlayModeTypes mode = Command.PlayModeTypes.REPEAT;
+        int maxRepeats = 1;
+        String line;
+
+        /**
+         * The notes played on the given fire of the command, counted from zero.
+         * @param fire
+         * @param notesDelayMs
+         * @return
+         */
+        List<DelayedNote> notesOfFire(long fire, long notesDelayMs) {
+            List<DelayedNote> result = new ArrayList<>();
+            if (at) {
+                for (String note : notes) result.add(new DelayedNote(Pitch.fromName(note), 0));
+            } else if (mode == Command.PlayModeTypes.SCALE) {
+                result.add(new DelayedNote(Pitch.fromName(notes[(int) (fire % notes.length)]), 0));
+            } else if (mode == Command.PlayModeTypes.ARPEGGIO) {
+                int last = (int) (fire % notes.length);
+                for (int i = 0; i <= last; i++) result.add(new DelayedNote(Pitch.fromName(notes[i]), i * notesDelayMs));
+            } else {
+                int repeats = (int) (fire % maxRepeats) + 1;
+                for (int i = 0; i < repeats; i++) {
+                    for (String note : notes) result.add(new DelayedNote(Pitch.fromName(note), i * notesDelayMs));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Builds a list of commands mixing at and every, with timestamps
+     * from one decisecond to a few minutes (at can also be zero).
+     * @param count
+     * @param random
+     * @return
+     */
+    static List<Spec> generate(int count, Random random) {
+        List<Spec> specs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Spec spec = new Spec();
+            spec.at = random.nextInt(4) == 0;
+            spec.notes = NOTE_LISTS[random.nextInt(NOTE_LISTS.length)];
+
+            StringBuilder sb = new StringBuilder(spec.at ? "at " : "every ");
+            int seconds, minutes, deciseconds;
+            switch (random.nextInt(5)) {
+                case 0:
+                    deciseconds = 1 + random.nextInt(99);
+                    sb.append(deciseconds).append("ds");
+                    spec.timestamp = deciseconds * 100L;
+                    break;
+                case 1:
+                    seconds = 1 + random.nextInt(59);
+                    sb.append(seconds).append("s");
+                    spec.timestamp = seconds * 1000L;
+                    break;
+                case 2:
+                    minutes = random.nextInt(3);
+                    seconds = 1 + random.nextInt(59);
+                    sb.append(minutes).append("m:").append(seconds).append("s");
+                    spec.timestamp = minutes * 60_000L + seconds * 1000L;
+                    break;
+                case 3:
+                    minutes = 1 + random.nextInt(2);
+                    deciseconds = random.nextInt(10);
+                    sb.append(minutes).append("m:").append(deciseconds).append("ds");
+                    spec.timestamp = minutes * 60_000L + deciseconds * 100L;
+                    break;
+                default:
+                    if (spec.at) {
+                        sb.append("0s");
+                        spec.timestamp = 0;
+                    } else {
+                        sb.append("1ds");
+                        spec.timestamp = 100;
+                    }
+                    break;
+            }
+
+            sb.append(" play ").append(String.join(",", spec.notes));
+            if (!spec.at) {
+                switch (random.nextInt(5)) {
+                    case 0: break;
+                    case 1: sb.append(" scale"); spec.mode = Command.PlayModeTypes.SCALE; break;
+                    case 2: sb.append(" arpeggio"); spec.mode = Command.PlayModeTypes.ARPEGGIO; break;
+                    case 3: sb.append(" repeat"); break;
+                    default:
+                        spec.maxRepeats = 1 + random.nextInt(4);
+                        sb.append(" repeat ").append(spec.maxRepeats);
+                        break;
+                }
+            }
+            spec.line = sb.toString();
+            specs.add(spec);
+        }
+        return specs;
+    }
+
+    /**
+     * The text to give to Rules for the given commands.
+     * @param specs
+     * @return
+     */
+    static String toText(List<Spec> specs) {
+        StringBuilder sb = new StringBuilder();
+        for (Spec spec : specs) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(spec.line);
+        }
+        return sb.toString();
+    }
+}
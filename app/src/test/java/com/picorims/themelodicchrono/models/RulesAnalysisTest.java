@@ -0,0 +1,57 @@
+package com.picorims.themelodicchrono.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RulesAnalysisTest {
+    private static final long NOTES_DELAY_MS = 250;
+    private static final double NOTE_DURATION = 0.5;
+
+    private static RulesAnalysis analyse(String commands) {
+        Rules rules = new Rules(commands, NOTES_DELAY_MS, NOTE_DURATION);
+        assertTrue(rules.getErrorMessage(), rules.isSuccessfullyParsed());
+        return rules.getAnalysis();
+    }
+
+    @Test
+    public void hyperperiodIsTheLcmOfPeriods() {
+        assertEquals(0, analyse("at 1s play C").getHyperperiodMs());
+        assertEquals(6000, analyse("every 2s play C\nevery 3s play D\nat 5s play E").getHyperperiodMs());
+        assertEquals(60_000, analyse("every 4s play C\nevery 6s play D\nevery 1m play E").getHyperperiodMs());
+    }
+
+    @Test
+    public void peakCountsOverlappingFires() {
+        // the longest arpeggio lasts 2*250ms + 500ms, so 10 fires of 1ds overlap
+        RulesAnalysis analysis = analyse("every 1ds play C,E,G arpeggio");
+        assertEquals(10, analysis.getPeakVoices());
+        assertEquals(30, analysis.getPeakNotes());
+
+        // AT phrases only add up when they overlap
+        assertEquals(1, analyse("at 1s play C\nat 2s play D").getPeakVoices());
+        assertEquals(2, analyse("at 1s play C\nat 1s:2ds play D").getPeakVoices());
+    }
+
+    @Test
+    public void repeatMultipliesNotesPerSecond() {
+        // 2 notes, then 4 notes: 3 notes per fire on average
+        assertEquals(3, analyse("every 1s play C,E repeat 2").getNotesPerSecond(), 1e-9);
+        // plus one note 10 times per second
+        assertEquals(13, analyse("every 1ds play C,E scale\nevery 1s play C,E repeat 2")
+                .getNotesPerSecond(), 1e-9);
+    }
+
+    @Test
+    public void warnsOverBudget() {
+        RulesAnalysis.Budget budget = new RulesAnalysis.Budget(8, 10, 1);
+        assertNull(analyse("every 1s play C,E,G").checkBudget(budget, 48000));
+        String warning = analyse("every 1ds play C,E,G arpeggio").checkBudget(budget, 48000);
+        assertNotNull(warning);
+        assertTrue(warning, warning.contains("10 sounds at once"));
+        assertTrue(warning, warning.contains("20 notes per second"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.picorims.themelodicchrono.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compares the timing wheel used by Rules.getNotesToPlay() to a full scan of the commands
+ * for growing rule sets. Timings are printed, and both must give the same notes.
+ * It is slow, so it only runs with -Dmelodic.benchmarks=true.
+ */
+public class RulesSchedulingBenchmark {
+    private static final long TICK_MS = 1000 / 60;
+    private static final long SIMULATED_MS = 2 * 60_000;
+    private static final long WARM_UP_MS = 20_000; //untimed, so that both strategies are compiled by the JIT
+
+    @Before
+    public void onlyWhenAsked() {
+        assumeTrue("benchmarks are opt-in", Boolean.getBoolean("melodic.benchmarks"));
+    }
+
+    @Test
+    public void wheelMatchesScan_10() {
+        compare(10);
+    }
+
+    @Test
+    public void wheelMatchesScan_1k() {
+        compare(1_000);
+    }
+
+    @Test
+    public void wheelMatchesScan_100k() {
+        compare(100_000);
+    }
+
+    private void compare(int commandCount) {
+        String commands = RandomRules.toText(RandomRules.generate(commandCount, new Random(commandCount)));
+        Rules wheelRules = new Rules(commands, 250);
+        Rules scanRules = new Rules(commands, 250);
+        assertTrue(wheelRules.isSuccessfullyParsed());
+
+        playWheel(wheelRules, WARM_UP_MS);
+        playScan(scanRules, WARM_UP_MS);
+        wheelRules.reset();
+        scanRules.reset();
+
+        long start = System.nanoTime();
+        long wheelNotes = playWheel(wheelRules, SIMULATED_MS);
+        long wheelNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long scanNotes = playScan(scanRules, SIMULATED_MS);
+        long scanNs = System.nanoTime() - start;
+
+        long ticks = SIMULATED_MS / TICK_MS;
+        System.out.println(commandCount + " commands: wheel " + (wheelNs / ticks) + " ns/tick, "
+                + "scan " + (scanNs / ticks) + " ns/tick, " + wheelNotes + " notes");
+        assertEquals(scanNotes, wheelNotes);
+
+        // both must give the same notes at each tick, not only the same amount
+        wheelRules.reset();
+        scanRules.reset();
+        for (long t = 0; t < SIMULATED_MS; t += TICK_MS) {
+            assertEquals("tick at " + t + "ms", scanRules.scanNotesToPlay(t, t + TICK_MS),
+                    wheelRules.getNotesToPlay(t, t + TICK_MS));
+        }
+    }
+
+    private static long playWheel(Rules rules, long durationMs) {
+        long notes = 0;
+        for (long t = 0; t < durationMs; t += TICK_MS) {
+            notes += rules.getNotesToPlay(t, t + TICK_MS).size();
+        }
+        return notes;
+    }
+
+    private static long playScan(Rules rules, long durationMs) {
+        long notes = 0;
+        for (long t = 0; t < durationMs; t += TICK_MS) {
+            notes += rules.scanNotesToPlay(t, t + TICK_MS).size();
+        }
+        return notes;
+    }
+}
@@ -0,0 +1,152 @@
+package com.picorims.themelodicchrono.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays random rule sets on a virtual clock, with jittered loop calls, pauses and resets,
+ * and checks that every expected note is played exactly once, on the loop call whose range
+ * contains it and with the cursor state it should have.
+ * A failure gives the seed, so it can be replayed by putting it in FIXED_SEEDS.
+ * The runs use the same seeds every time, unless another base seed is given
+ * with -Dmelodic.replaySeed=... (for example System.nanoTime() to fuzz).
+ */
+public class SchedulerReplayTest {
+    private static final long[] FIXED_SEEDS = {};
+    private static final long BASE_SEED = Long.getLong("melodic.replaySeed", 20221003L);
+    private static final int RANDOM_RUNS = 300;
+    private static final long NOTES_DELAY_MS = 250;
+    private static final long FRAME_MS = 1000 / 60;
+    private static final long MAX_GAP_MS = 90; //usual gap between two loop calls
+    private static final int MAX_STALL_MS = 3000; //when the loop call is very late
+    private static final int RUN_LOOP_CALLS = 10_000;
+
+    // throughput
+    private static final int STRESS_COMMANDS = 20_000;
+    private static final long STRESS_RUN_MS = 5 * 60_000;
+    private static final long TICK_BUDGET_NS = 1_000_000;
+
+    @Test
+    public void replaysPlayEveryNoteOnce() {
+        for (long seed : FIXED_SEEDS) replay(seed, Command.MissedFiresModes.PLAY_ALL);
+        for (int i = 0; i < RANDOM_RUNS; i++) replay(BASE_SEED + i, Command.MissedFiresModes.PLAY_ALL);
+    }
+
+    @Test
+    public void replaysCollapseMissedFires() {
+        for (long seed : FIXED_SEEDS) replay(seed, Command.MissedFiresModes.COLLAPSE);
+        for (int i = 0; i < RANDOM_RUNS; i++) replay(BASE_SEED + i, Command.MissedFiresModes.COLLAPSE);
+    }
+
+    @Test
+    public void commandsWithTheSameNotesShareTheirPhrase() {
+        Rules rules = new Rules("every 2s play C,E,G scale\nat 2s play C", NOTES_DELAY_MS);
+        ArrayList<Phrase> phrases = rules.getPhrasesToPlay(1999, 2001);
+        assertEquals(2, phrases.size());
+        assertSame(phrases.get(0), phrases.get(1));
+    }
+
+    @Test
+    public void loopCallStaysWithinBudget() {
+        Random random = new Random(42);
+        Rules rules = new Rules(RandomRules.toText(RandomRules.generate(STRESS_COMMANDS, random)), NOTES_DELAY_MS);
+        Chrono chrono = new Chrono();
+        long unixNow = 1_000_000;
+        long ticks = 0;
+        long notes = 0;
+        long start = System.nanoTime();
+        while (chrono.getEllapsed() < STRESS_RUN_MS) {
+            unixNow += nextGap(random, chrono.getEllapsed());
+            chrono.tick(unixNow);
+            notes += rules.getNotesToPlay(chrono.getEllapsedThen(), chrono.getEllapsed()).size();
+            ticks++;
+        }
+        long nsPerTick = (System.nanoTime() - start) / ticks;
+        System.out.println(STRESS_COMMANDS + " commands: " + nsPerTick + " ns/tick, " + notes + " notes");
+        assertTrue("loop call took " + nsPerTick + "ns on average", nsPerTick < TICK_BUDGET_NS);
+    }
+
+    /**
+     * Runs one random scenario and compares each loop call with what the commands mean.
+     * @param seed
+     * @param missedFiresMode
+     */
+    private void replay(long seed, Command.MissedFiresModes missedFiresMode) {
+        Random random = new Random(seed);
+        List<RandomRules.Spec> specs = RandomRules.generate(1 + random.nextInt(20), random);
+        Rules rules = new Rules(RandomRules.toText(specs), NOTES_DELAY_MS);
+        assertTrue("seed " + seed + ": " + rules.getErrorMessage(), rules.isSuccessfullyParsed());
+        rules.setMissedFiresMode(missedFiresMode);
+
+        Chrono chrono = new Chrono();
+        long[] fires = new long[specs.size()];
+        long unixNow = random.nextInt(1_000_000_000);
+        for (int tick = 0; tick < RUN_LOOP_CALLS; tick++) {
+            int event = random.nextInt(1000);
+            if (event < 3) {
+                // pause for up to a minute
+                chrono.stop(unixNow + random.nextInt((int) MAX_GAP_MS));
+                unixNow += MAX_GAP_MS + random.nextInt(60_000);
+            } else if (event < 4) {
+                chrono.reset();
+                rules.reset();
+                fires = new long[specs.size()];
+            }
+            unixNow += nextGap(random, chrono.getEllapsed());
+            chrono.tick(unixNow);
+            long min = chrono.getEllapsedThen();
+            long max = chrono.getEllapsed();
+
+            List<DelayedNote> expected = new ArrayList<>();
+            for (int i = 0; i < specs.size(); i++) {
+                RandomRules.Spec spec = specs.get(i);
+                if (spec.at) {
+                    // at plays when its timestamp is in [min, max[
+                    if (spec.timestamp >= min && spec.timestamp < max) {
+                        expected.addAll(spec.notesOfFire(fires[i]++, NOTES_DELAY_MS));
+                    }
+                } else {
+                    // every plays for each multiple of its period in ]min, max]
+                    long count = max / spec.timestamp - min / spec.timestamp;
+                    if (count > 0 && missedFiresMode == Command.MissedFiresModes.COLLAPSE) {
+                        fires[i] += count - 1;
+                        count = 1;
+                    }
+                    for (long k = 0; k < count; k++) {
+                        expected.addAll(spec.notesOfFire(fires[i]++, NOTES_DELAY_MS));
+                    }
+                }
+            }
+            List<DelayedNote> actual = rules.getNotesToPlay(min, max);
+            if (!expected.equals(actual)) {
+                fail("seed " + seed + ", loop call " + tick + " ]" + min + ", " + max + "]: "
+                        + "expected " + expected + " but got " + actual);
+            }
+        }
+    }
+
+    /**
+     * Time until the next loop call: usually around a frame, sometimes
+     * exactly on the next decisecond, sometimes twice in the same millisecond,
+     * and sometimes a stall much longer than the shortest periods.
+     * @param random
+     * @param ellapsed
+     * @return
+     */
+    private long nextGap(Random random, long ellapsed) {
+        int kind = random.nextInt(10);
+        if (kind == 0) return 0;
+        if (kind == 1) return (100 - ellapsed % 100) % 100;
+        if (kind == 2 && random.nextInt(20) == 0) return random.nextInt(MAX_STALL_MS);
+        long jitter = (long) (random.nextGaussian() * 8 + 0.5);
+        return Math.max(0, Math.min(MAX_GAP_MS, FRAME_MS + jitter));
+    }
+}
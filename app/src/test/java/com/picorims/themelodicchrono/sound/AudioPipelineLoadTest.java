@@ -0,0 +1,164 @@
+package com.picorims.themelodicchrono.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.picorims.themelodicchrono.debug.Metrics;
+import com.picorims.themelodicchrono.models.Phrase;
+import com.picorims.themelodicchrono.models.Rules;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+/**
+ * Runs the whole pipeline (rules firing, synthesis, output) without a device,
+ * through the sinks that don't need one.
+ */
+public class AudioPipelineLoadTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int BURST_FRAMES = 240;
+    private static final double NOTE_DURATION = 0.5;
+    private static final long SIMULATED_MS = 60_000;
+    private static final long TICK_MS = 1000 / 60; //shorter than the shortest period, so that no fire is collapsed
+    private static final long TIMEOUT_MS = 60_000;
+    private static final long PACED_MS = 500;
+    private static final String HEAVY_RULES = "every 1ds play C,E,G arpeggio\n"
+            + "every 2ds play A,B repeat 3\n"
+            + "every 1s play C,D,E,F,G,A,B scale\n"
+            + "every 3s play C,E,G,B repeat 4";
+    // SIMULATED_MS divided by the period of each command
+    private static final long HEAVY_RULES_FIRES = 600 + 300 + 60 + 20;
+
+    @Test
+    public void pipelineRunsFasterThanRealTime() throws InterruptedException {
+        NullSink sink = new NullSink(false);
+        AudioEngine engine = AudioEngine.create(sink, SAMPLE_RATE, BURST_FRAMES);
+        assertTrue(engine.isRunning());
+        Rules rules = new Rules(HEAVY_RULES, 250, NOTE_DURATION);
+        long playedBefore = Metrics.VOICES_PLAYED.get();
+        long chunksBefore = Metrics.SYNTH_CHUNKS.get();
+        long startNs = System.nanoTime();
+
+        // the chrono ticks as the output plays, as if the notes were heard when they are played
+        long voices = 0;
+        long then = 0;
+        while (then < SIMULATED_MS) {
+            long now = Math.min(then + TICK_MS, SIMULATED_MS);
+            while (sink.getPlayedFrames() * 1000 / SAMPLE_RATE < now) Thread.yield();
+            ArrayList<Phrase> phrases = rules.getPhrasesToPlay(then, now);
+            for (int i = 0; i < phrases.size(); i++) {
+                engine.play(new PhraseVoice(phrases.get(i), NOTE_DURATION, engine.getSampleRate(), 0));
+            }
+            voices += phrases.size();
+            then = now;
+        }
+        long scheduled = voices;
+        waitFor(() -> Metrics.VOICES_PLAYED.get() - playedBefore >= scheduled);
+        long wallMs = (System.nanoTime() - startNs) / 1_000_000;
+        engine.close();
+
+        double realTimeFactor = (double) SIMULATED_MS / wallMs;
+        System.out.println(voices + " phrases over " + SIMULATED_MS + "ms in " + wallMs + "ms (x" + realTimeFactor + ")");
+        assertEquals(HEAVY_RULES_FIRES, voices);
+        assertEquals(voices, Metrics.VOICES_PLAYED.get() - playedBefore);
+        assertTrue(Metrics.SYNTH_CHUNKS.get() > chunksBefore);
+        assertTrue("the pipeline is slower than real time", realTimeFactor > 1);
+    }
+
+    @Test
+    public void realTimeNullSinkKeepsPace() throws InterruptedException {
+        NullSink sink = new NullSink(true);
+        long startNs = System.nanoTime();
+        AudioEngine engine = AudioEngine.create(sink, 8000, 128);
+        Thread.sleep(PACED_MS);
+        long played = sink.getPlayedFrames();
+        long elapsedFrames = (System.nanoTime() - startNs) * engine.getSampleRate() / 1_000_000_000L;
+        engine.close();
+
+        // a write waits for the previous chunks to be played, so it is at most a chunk ahead
+        assertTrue("ahead of real time: " + played + " > " + elapsedFrames,
+                played <= elapsedFrames + engine.getChunkFrames());
+        assertTrue("behind real time: " + played + " < " + elapsedFrames,
+                played >= elapsedFrames / 2);
+    }
+
+    @Test
+    public void outputPausesWhenIdle() throws InterruptedException {
+        NullSink sink = new NullSink(false);
+        AudioEngine engine = AudioEngine.create(sink, 8000, 128);
+        // nothing plays: the output stops receiving silence after a while
+        waitFor(() -> {
+            long played = sink.getPlayedFrames();
+            Thread.sleep(50);
+            return played > 0 && sink.getPlayedFrames() == played;
+        });
+
+        // and the next note wakes it up
+        long playedBefore = Metrics.VOICES_PLAYED.get();
+        engine.play(new SineVoice(440, 0.05, engine.getSampleRate(), 0));
+        waitFor(() -> Metrics.VOICES_PLAYED.get() > playedBefore);
+        engine.close();
+    }
+
+    @Test
+    public void wavSinkRecordsTheMix() throws Exception {
+        // the WAV file reads the samples back from the chunks, whatever their storage
+        for (PcmChunk.Formats format : PcmChunk.Formats.values()) {
+            recordTone(format);
+        }
+    }
+
+    @Test
+    public void javaSoundSinkPlaysWhenASoundCardIsAvailable() throws InterruptedException {
+        AudioEngine engine = AudioEngine.create(new JavaSoundSink(), 44100, 256);
+        assumeTrue("no sound card", engine.isRunning());
+        long playedBefore = Metrics.VOICES_PLAYED.get();
+        engine.play(new SineVoice(440, 0.2, engine.getSampleRate(), 0));
+        waitFor(() -> Metrics.VOICES_PLAYED.get() > playedBefore);
+        engine.close();
+    }
+
+    private static void recordTone(PcmChunk.Formats format) throws Exception {
+        File file = File.createTempFile("pipeline", ".wav");
+        file.deleteOnExit();
+        WavFileSink sink = new WavFileSink(file);
+        AudioEngine engine = AudioEngine.create(sink, 8000, 128, format);
+        assertEquals(format, engine.getFormat());
+        long playedBefore = Metrics.VOICES_PLAYED.get();
+        engine.play(new SineVoice(440, 0.05, engine.getSampleRate(), 0));
+        waitFor(() -> Metrics.VOICES_PLAYED.get() > playedBefore);
+        engine.close();
+
+        long frames = sink.getPlayedFrames();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            assertEquals(44 + frames * 2, raf.length());
+            byte[] riff = new byte[4];
+            raf.readFully(riff);
+            assertEquals("RIFF", new String(riff, "US-ASCII"));
+            raf.seek(40);
+            assertEquals(frames * 2, Integer.reverseBytes(raf.readInt()));
+            // the tone is somewhere in the recording
+            int loudest = 0;
+            for (long i = 0; i < frames; i++) {
+                loudest = Math.max(loudest, Math.abs(Short.reverseBytes(raf.readShort())));
+            }
+            assertTrue(format + " is silent", loudest > 1000);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet() throws InterruptedException;
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.isMet()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.picorims.themelodicchrono.sound;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays the chunks on the sound card of a desktop JVM (javax.sound is not available on Android).
+ */
+public class JavaSoundSink implements AudioSink {
+    private SourceDataLine line;
+    private byte[] bytes;
+
+    @Override
+    public boolean open(int sampleRate, PcmChunk.Formats format, int chunkFrames) {
+        try {
+            AudioFormat audioFormat = new AudioFormat(sampleRate, 16, 1, true, false);
+            line = AudioSystem.getSourceDataLine(audioFormat);
+            line.open(audioFormat, 4 * chunkFrames * 2);
+            bytes = new byte[chunkFrames * 2];
+            return true;
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void start() {
+        line.start();
+    }
+
+    @Override
+    public void pause() {
+        line.stop();
+    }
+
+    @Override
+    public int write(PcmChunk chunk) {
+        int frames = chunk.getFrames();
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (chunk.getSample(i) * 32767);
+            bytes[2 * i] = (byte) (sample & 0xff);
+            bytes[2 * i + 1] = (byte) ((sample >> 8) & 0xff);
+        }
+        return line.write(bytes, 0, frames * 2) / 2;
+    }
+
+    @Override
+    public long getPlayedFrames() {
+        return line.getLongFramePosition();
+    }
+
+    @Override
+    public int getUnderrunCount() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
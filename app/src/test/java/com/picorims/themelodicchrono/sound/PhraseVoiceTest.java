@@ -0,0 +1,66 @@
+package com.picorims.themelodicchrono.sound;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.picorims.themelodicchrono.models.DelayedNote;
+import com.picorims.themelodicchrono.models.Phrase;
+import com.picorims.themelodicchrono.models.Pitch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * A phrase sounds the same whether it is synthesized as it plays
+ * or taken from the PhraseCache.
+ */
+public class PhraseVoiceTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int CHUNK_FRAMES = 128;
+    private static final double NOTE_DURATION = 0.1;
+    private static final long TIMEOUT_MS = 10_000;
+
+    @Test
+    public void streamedPhraseMatchesItsRender() throws InterruptedException {
+        PhraseCache.clear();
+        Phrase phrase = new Phrase(Arrays.asList(
+                new DelayedNote(Pitch.C4, 0),
+                new DelayedNote(Pitch.C4 + 4, 33),
+                new DelayedNote(Pitch.A4, 71)));
+        float[] streamed = play(new PhraseVoice(phrase, NOTE_DURATION, SAMPLE_RATE, 0));
+
+        // the render asked by the first voice is used by the next ones
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (PhraseCache.getOrRenderLater(phrase, NOTE_DURATION, SAMPLE_RATE) == null) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        float[] cached = play(new PhraseVoice(phrase, NOTE_DURATION, SAMPLE_RATE, 0));
+
+        assertArrayEquals(cached, streamed, 1e-6f);
+    }
+
+    @Test
+    public void missDoesNotRenderOnTheCaller() {
+        PhraseCache.clear();
+        Phrase phrase = new Phrase(Arrays.asList(new DelayedNote(Pitch.A4, 0)));
+        assertNull(PhraseCache.getOrRenderLater(phrase, NOTE_DURATION, SAMPLE_RATE));
+    }
+
+    /**
+     * Renders the voice chunk by chunk, like the engine does.
+     */
+    private static float[] play(Voice voice) {
+        float[] out = new float[0];
+        float[] mix = new float[CHUNK_FRAMES];
+        while (!voice.isFinished()) {
+            Arrays.fill(mix, 0);
+            voice.render(mix, CHUNK_FRAMES);
+            out = Arrays.copyOf(out, out.length + CHUNK_FRAMES);
+            System.arraycopy(mix, 0, out, out.length - CHUNK_FRAMES, CHUNK_FRAMES);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,85 @@
+package com.picorims.themelodicchrono.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.picorims.themelodicchrono.debug.Metrics;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+/**
+ * Checks the fallback used when the output refuses the rate of synthesis:
+ * the resampled signal must join across the blocks of its source, and the engine
+ * must go through it when the output only accepts the fallback rate.
+ */
+public class ResamplerTest {
+    private static final int INPUT_RATE = 48000;
+    private static final int OUTPUT_RATE = 44100;
+    private static final int BLOCK_FRAMES = 128;
+    private static final int OUTPUT_CHUNK = 100; //not aligned with the blocks on purpose
+    private static final double FREQ = 440;
+    private static final float MAX_ERROR = 1e-3f;
+    private static final long TIMEOUT_MS = 10_000;
+
+    @Test
+    public void sineFollowsTheIdealSignal() {
+        Resampler resampler = new Resampler(new Resampler.Source() {
+            private int position = 0;
+
+            @Override
+            public void render(float[] mix, int length) {
+                for (int i = 0; i < length; i++, position++) {
+                    mix[i] += (float) Math.sin(2 * Math.PI * FREQ * position / INPUT_RATE);
+                }
+            }
+        }, INPUT_RATE, OUTPUT_RATE, BLOCK_FRAMES);
+
+        float[] output = new float[OUTPUT_CHUNK];
+        int n = 0;
+        for (int chunk = 0; chunk < 200; chunk++) {
+            resampler.resample(output, OUTPUT_CHUNK);
+            for (int i = 0; i < OUTPUT_CHUNK; i++, n++) {
+                double ideal = Math.sin(2 * Math.PI * FREQ * n / OUTPUT_RATE);
+                assertEquals("sample " + n, ideal, output[i], MAX_ERROR);
+            }
+        }
+    }
+
+    @Test
+    public void engineResamplesWhenTheOutputRefusesItsRate() throws Exception {
+        File file = File.createTempFile("resampled", ".wav");
+        file.deleteOnExit();
+        WavFileSink sink = new WavFileSink(file) {
+            @Override
+            public boolean open(int sampleRate, PcmChunk.Formats format, int chunkFrames) {
+                return sampleRate == OUTPUT_RATE && super.open(sampleRate, format, chunkFrames);
+            }
+        };
+        AudioEngine engine = AudioEngine.create(sink, INPUT_RATE, BLOCK_FRAMES);
+        assertTrue(engine.isRunning());
+        assertEquals(INPUT_RATE, engine.getSampleRate());
+        long playedBefore = Metrics.VOICES_PLAYED.get();
+        engine.play(new SineVoice(FREQ, 0.1, engine.getSampleRate(), 0));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (Metrics.VOICES_PLAYED.get() == playedBefore) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        engine.close();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(24);
+            assertEquals(OUTPUT_RATE, Integer.reverseBytes(raf.readInt()));
+            // the tone is still there after resampling
+            raf.seek(44);
+            int loudest = 0;
+            for (long i = 0; i < sink.getPlayedFrames(); i++) {
+                loudest = Math.max(loudest, Math.abs(Short.reverseBytes(raf.readShort())));
+            }
+            assertTrue(loudest > 1000);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.picorims.themelodicchrono.sound;
+
+import static org.junit.Assert.assertTrue;
+
+import com.picorims.themelodicchrono.models.Pitch;
+
+import org.junit.Test;
+
+/**
+ * The loop of a held tone must be long enough for the track, and in tune
+ * for every note at the usual native rates.
+ */
+public class SustainedToneTest {
+    private static final int[] SAMPLE_RATES = {44100, 48000};
+    private static final int LOWEST_PITCH = 24; //C1
+    private static final int HIGHEST_PITCH = 108; //C8
+    private static final int MIN_LOOP_FRAMES = 64;
+    private static final double MAX_DETUNE_CENTS = 0.5;
+
+    @Test
+    public void loopIsInTuneAndLongEnough() {
+        for (int sampleRate : SAMPLE_RATES) {
+            for (int pitch = LOWEST_PITCH; pitch <= HIGHEST_PITCH; pitch++) {
+                double freq = Pitch.toHz(pitch);
+                int[] loop = SustainedTone.loopOf(freq, sampleRate);
+                int cycles = loop[0];
+                int frames = loop[1];
+                String tone = Pitch.toName(pitch) + " at " + sampleRate + "Hz";
+
+                assertTrue(tone + ": loop of " + frames + " frames", frames >= MIN_LOOP_FRAMES);
+                double played = (double) sampleRate * cycles / frames;
+                double detune = Math.abs(1200 * Math.log(played / freq) / Math.log(2));
+                assertTrue(tone + ": " + detune + " cents off", detune <= MAX_DETUNE_CENTS);
+            }
+        }
+    }
+}